@@ -1,16 +1,29 @@
 package com.enicarthage.library.controller;
 
 import com.enicarthage.library.entity.Book;
+import com.enicarthage.library.search.CompletionTrie;
+import com.enicarthage.library.service.BookImportService;
 import com.enicarthage.library.service.BookService;
+import com.enicarthage.library.service.ExportService;
+import com.enicarthage.library.util.ETags;
+import com.enicarthage.library.util.ExportWriter;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -21,43 +34,124 @@ public class BookController {
     @Autowired
     private BookService bookService;
     
+    @Autowired
+    private BookImportService bookImportService;
+    
+    @Autowired
+    private ExportService exportService;
+    
     @GetMapping
     public ResponseEntity<Page<Book>> getAllBooks(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "title") String sortBy,
-            @RequestParam(defaultValue = "asc") String sortDir) {
+            @RequestParam(defaultValue = "asc") String sortDir,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
+        String etag = ETags.of("catalog", bookService.getCatalogVersion());
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
         Sort sort = sortDir.equalsIgnoreCase("desc") ? 
             Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
         Pageable pageable = PageRequest.of(page, size, sort);
         
         Page<Book> books = bookService.getAllBooks(pageable);
-        return ResponseEntity.ok(books);
+        return ResponseEntity.ok().eTag(etag).body(books);
+    }
+    
+    // Keyset pagination: no count query, and deep pages cost the same as the first
+    @GetMapping("/scroll")
+    public ResponseEntity<Map<String, Object>> scrollBooks(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "title") String sortBy,
+            @RequestParam(defaultValue = "asc") String sortDir,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        String etag = ETags.of("catalog", bookService.getCatalogVersion());
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
+        Map<String, Object> books = bookService.getBooks(cursor, size, sortBy, sortDir);
+        return ResponseEntity.ok().eTag(etag).body(books);
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<Book> getBookById(@PathVariable Long id) {
+    public ResponseEntity<Book> getBookById(@PathVariable Long id,
+                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         Optional<Book> book = bookService.getBookById(id);
-        return book.map(ResponseEntity::ok)
-                  .orElse(ResponseEntity.notFound().build());
+        if (book.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = ETags.of("book", id, book.get().getVersion());
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
+        return ResponseEntity.ok().eTag(etag).body(book.get());
     }
     
     @GetMapping("/search")
     public ResponseEntity<Page<Book>> searchBooks(
             @RequestParam String q,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
+        String etag = ETags.of("catalog", bookService.getCatalogVersion());
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
         Pageable pageable = PageRequest.of(page, size);
         Page<Book> books = bookService.searchBooks(q, pageable);
-        return ResponseEntity.ok(books);
+        return ResponseEntity.ok().eTag(etag).body(books);
+    }
+    
+    @GetMapping("/facets")
+    public ResponseEntity<Map<String, Object>> facetedSearch(
+            @RequestParam(required = false) List<String> category,
+            @RequestParam(required = false) List<String> language,
+            @RequestParam(required = false) List<String> decade,
+            @RequestParam(required = false) List<String> availability,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        
+        Map<String, List<String>> selections = new HashMap<>();
+        selections.put("category", category);
+        selections.put("language", language);
+        selections.put("decade", decade);
+        selections.put("availability", availability);
+        
+        Map<String, Object> result = bookService.facetedSearch(selections, PageRequest.of(page, size));
+        return ResponseEntity.ok(result);
+    }
+    
+    @GetMapping("/changes")
+    public ResponseEntity<Map<String, Object>> getChanges(
+            @RequestParam(required = false) String since,
+            @RequestParam(defaultValue = "500") int limit) {
+        
+        Map<String, Object> changes = bookService.getChangesSince(since, limit);
+        return ResponseEntity.ok(changes);
+    }
+    
+    @GetMapping("/suggest")
+    public ResponseEntity<List<CompletionTrie.Completion>> suggest(
+            @RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        
+        List<CompletionTrie.Completion> suggestions = bookService.suggest(prefix, limit);
+        return ResponseEntity.ok(suggestions);
     }
     
     @GetMapping("/available")
-    public ResponseEntity<List<Book>> getAvailableBooks() {
+    public ResponseEntity<List<Book>> getAvailableBooks(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = ETags.of("catalog", bookService.getCatalogVersion());
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
         List<Book> books = bookService.getAvailableBooks();
-        return ResponseEntity.ok(books);
+        return ResponseEntity.ok().eTag(etag).body(books);
     }
     
     @GetMapping("/category/{category}")
@@ -72,6 +166,12 @@ public class BookController {
         return ResponseEntity.ok(books);
     }
     
+    @GetMapping("/title/{title}")
+    public ResponseEntity<List<Book>> getBooksByTitle(@PathVariable String title) {
+        List<Book> books = bookService.getBooksByTitle(title);
+        return ResponseEntity.ok(books);
+    }
+    
     @GetMapping("/year/{year}")
     public ResponseEntity<List<Book>> getBooksByYear(@PathVariable Integer year) {
         List<Book> books = bookService.getBooksByPublicationYear(year);
@@ -88,6 +188,33 @@ public class BookController {
         }
     }
     
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    @PreAuthorize("hasRole('LIBRARIAN') or hasRole('ADMIN')")
+    public ResponseEntity<?> importBooks(@RequestHeader("Content-Type") String contentType,
+                                         HttpServletRequest request) {
+        try {
+            Map<String, Object> report = contentType.startsWith("application/x-ndjson")
+                    ? bookImportService.importNdjson(request.getInputStream())
+                    : bookImportService.importCsv(request.getInputStream());
+            return ResponseEntity.ok(report);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+    
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('LIBRARIAN') or hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportBooks(@RequestParam(defaultValue = "ndjson") String format) {
+        String exportFormat = ExportWriter.format(format);
+        StreamingResponseBody body = out -> exportService.exportBooks(exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(ExportWriter.contentType(exportFormat)))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books." + exportFormat + "\"")
+                .body(body);
+    }
+    
     @PutMapping("/{id}")
     public ResponseEntity<Book> updateBook(@PathVariable Long id, @RequestBody Book book) {
         try {
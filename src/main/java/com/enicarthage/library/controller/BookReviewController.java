@@ -24,6 +24,8 @@ import java.util.Optional;
 @CrossOrigin(origins = "*")
 public class BookReviewController {
     
+    private static final int MAX_PAGE_SIZE = 100;
+    
     @Autowired
     private BookReviewService bookReviewService;
     
@@ -80,6 +82,21 @@ public class BookReviewController {
         return ResponseEntity.badRequest().build();
     }
     
+    @GetMapping("/search")
+    public ResponseEntity<Page<BookReview>> searchReviews(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer minRating,
+            @RequestParam(required = false) Integer maxRating,
+            @RequestParam(required = false) Boolean verified,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        
+        // Each hit is loaded from the database, so the page size is capped
+        Pageable pageable = PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        Page<BookReview> reviews = bookReviewService.searchReviews(q, minRating, maxRating, verified, pageable);
+        return ResponseEntity.ok(reviews);
+    }
+    
     @GetMapping("/book/{bookId}/average-rating")
     public ResponseEntity<Map<String, Object>> getBookAverageRating(@PathVariable Long bookId) {
         Map<String, Object> ratingInfo = bookReviewService.getBookAverageRating(bookId);
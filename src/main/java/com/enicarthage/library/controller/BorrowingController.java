@@ -1,15 +1,22 @@
 package com.enicarthage.library.controller;
 
 import com.enicarthage.library.entity.Borrowing;
+import com.enicarthage.library.service.BorrowingArchiveService;
 import com.enicarthage.library.service.BorrowingService;
+import com.enicarthage.library.service.ExportService;
+import com.enicarthage.library.service.IdempotencyStore;
+import com.enicarthage.library.util.ExportWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -24,14 +31,39 @@ public class BorrowingController {
     @Autowired
     private BorrowingService borrowingService;
     
+    @Autowired
+    private ExportService exportService;
+    
+    @Autowired
+    private BorrowingArchiveService borrowingArchiveService;
+    
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+    
     @PostMapping("/borrow")
     @PreAuthorize("hasRole('STUDENT') or hasRole('FACULTY')")
-    public ResponseEntity<?> borrowBook(@RequestParam Long bookId, @RequestParam Long userId) {
+    public ResponseEntity<?> borrowBook(@RequestParam Long bookId, @RequestParam Long userId,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return idempotencyStore.execute(idempotencyKey, "borrow:" + bookId + ":" + userId, () -> {
+            try {
+                Borrowing borrowing = borrowingService.borrowBook(bookId, userId);
+                Map<String, Object> response = new HashMap<>();
+                response.put("message", "Book borrowed successfully");
+                response.put("borrowing", borrowing);
+                return ResponseEntity.ok(response);
+            } catch (Exception e) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", e.getMessage());
+                return ResponseEntity.badRequest().body(error);
+            }
+        });
+    }
+    
+    @PostMapping("/borrow/batch")
+    @PreAuthorize("hasRole('STUDENT') or hasRole('FACULTY') or hasRole('LIBRARIAN')")
+    public ResponseEntity<?> borrowBooks(@RequestParam Long userId, @RequestBody List<Long> bookIds) {
         try {
-            Borrowing borrowing = borrowingService.borrowBook(bookId, userId);
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "Book borrowed successfully");
-            response.put("borrowing", borrowing);
+            Map<String, Object> response = borrowingService.borrowBooks(userId, bookIds);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
@@ -42,12 +74,26 @@ public class BorrowingController {
     
     @PostMapping("/return")
     @PreAuthorize("hasRole('STUDENT') or hasRole('FACULTY') or hasRole('LIBRARIAN')")
-    public ResponseEntity<?> returnBook(@RequestParam Long borrowingId) {
+    public ResponseEntity<?> returnBook(@RequestParam Long borrowingId,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return idempotencyStore.execute(idempotencyKey, "return:" + borrowingId, () -> {
+            try {
+                Map<String, Object> response = new HashMap<>(borrowingService.returnBook(borrowingId));
+                response.put("message", "Book returned successfully");
+                return ResponseEntity.ok(response);
+            } catch (Exception e) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", e.getMessage());
+                return ResponseEntity.badRequest().body(error);
+            }
+        });
+    }
+    
+    @PostMapping("/return/batch")
+    @PreAuthorize("hasRole('LIBRARIAN') or hasRole('ADMIN')")
+    public ResponseEntity<?> returnBooks(@RequestBody List<Long> borrowingIds) {
         try {
-            Borrowing borrowing = borrowingService.returnBook(borrowingId);
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "Book returned successfully");
-            response.put("borrowing", borrowing);
+            Map<String, Object> response = borrowingService.returnBorrowings(borrowingIds);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
@@ -56,6 +102,24 @@ public class BorrowingController {
         }
     }
     
+    @PostMapping("/archive")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> archiveClosedLoans() {
+        return ResponseEntity.ok(borrowingArchiveService.archiveClosedLoans());
+    }
+    
+    @GetMapping("/journal/verify")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> verifyJournal() {
+        try {
+            return ResponseEntity.ok(borrowingService.verifyJournal());
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+    
     @GetMapping
     @PreAuthorize("hasRole('LIBRARIAN') or hasRole('ADMIN')")
     public ResponseEntity<Page<Borrowing>> getAllBorrowings(
@@ -72,6 +136,30 @@ public class BorrowingController {
         return ResponseEntity.ok(borrowings);
     }
     
+    // Keyset pagination: no count query, and deep pages cost the same as the first
+    @GetMapping("/scroll")
+    @PreAuthorize("hasRole('LIBRARIAN') or hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> scrollBorrowings(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "borrowDate") String sortBy,
+            @RequestParam(defaultValue = "desc") String sortDir) {
+        
+        Map<String, Object> borrowings = borrowingService.getBorrowings(cursor, size, sortBy, sortDir);
+        return ResponseEntity.ok(borrowings);
+    }
+    
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('LIBRARIAN') or hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportBorrowings(@RequestParam(defaultValue = "ndjson") String format) {
+        String exportFormat = ExportWriter.format(format);
+        StreamingResponseBody body = out -> exportService.exportBorrowings(exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(ExportWriter.contentType(exportFormat)))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"borrowings." + exportFormat + "\"")
+                .body(body);
+    }
+    
     @GetMapping("/user/{userId}")
     @PreAuthorize("hasRole('LIBRARIAN') or hasRole('ADMIN')")
     public ResponseEntity<List<Borrowing>> getBorrowingsByUser(@PathVariable Long userId) {
@@ -5,6 +5,10 @@ import com.enicarthage.library.service.BorrowingService;
 import com.enicarthage.library.service.EventService;
 import com.enicarthage.library.service.UserService;
 import com.enicarthage.library.service.BookReviewService;
+import com.enicarthage.library.service.IdempotencyStore;
+import com.enicarthage.library.service.ReservationExpiryService;
+import com.enicarthage.library.service.ReservationService;
+import com.enicarthage.library.util.ETags;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -35,6 +39,15 @@ public class DashboardController {
     @Autowired
     private BookReviewService bookReviewService;
     
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+    
+    @Autowired
+    private ReservationService reservationService;
+    
+    @Autowired
+    private ReservationExpiryService reservationExpiryService;
+    
     @GetMapping("/overview")
     @PreAuthorize("hasRole('ADMIN') or hasRole('LIBRARIAN')")
     public ResponseEntity<Map<String, Object>> getDashboardOverview() {
@@ -95,6 +108,20 @@ public class DashboardController {
             booksByStatus.put(status.name(), 0); // Placeholder
         }
         statistics.put("booksByStatus", booksByStatus);
+        statistics.put("searchIndex", bookService.getSearchIndexStatistics());
+        statistics.put("cache", bookService.getCacheStatistics());
+        statistics.put("conditionalGet", ETags.getStatistics());
+        statistics.put("bookLocks", borrowingService.getLockStatistics());
+        statistics.put("loanSummaries", borrowingService.getLoanSummaryStatistics());
+        statistics.put("overdueTracker", borrowingService.getOverdueTrackerStatistics());
+        statistics.put("circulationTotals", borrowingService.getCirculationStatsStatistics());
+        statistics.put("journal", borrowingService.getJournalStatistics());
+        statistics.put("idempotency", idempotencyStore.getStatistics());
+        statistics.put("reservations", reservationService.getReservationStatistics());
+        statistics.put("reservationExpiry", reservationExpiryService.getStatistics());
+        statistics.put("ratingSummaries", bookReviewService.getRatingSummaryStatistics());
+        statistics.put("reviewStatsCache", bookReviewService.getReviewStatsCacheStatistics());
+        statistics.put("reviewSearchIndex", bookReviewService.getReviewSearchIndexStatistics());
         
         return ResponseEntity.ok(statistics);
     }
@@ -153,7 +180,7 @@ public class DashboardController {
         Map<String, Object> alerts = new HashMap<>();
         
         // Overdue books alert
-        int overdueCount = borrowingService.getOverdueBorrowings().size();
+        long overdueCount = borrowingService.getOverdueCount();
         if (overdueCount > 0) {
             alerts.put("overdueBooks", overdueCount + " books are overdue");
         }
@@ -172,7 +199,7 @@ public class DashboardController {
         
         // Unverified reviews
         Map<String, Object> reviewStats = bookReviewService.getReviewStatistics();
-        int unverifiedReviews = (Integer) reviewStats.get("unverifiedReviews");
+        long unverifiedReviews = ((Number) reviewStats.get("unverifiedReviews")).longValue();
         if (unverifiedReviews > 0) {
             alerts.put("unverifiedReviews", unverifiedReviews + " reviews need verification");
         }
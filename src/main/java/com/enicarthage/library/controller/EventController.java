@@ -2,11 +2,14 @@ package com.enicarthage.library.controller;
 
 import com.enicarthage.library.entity.Event;
 import com.enicarthage.library.service.EventService;
+import com.enicarthage.library.service.IdempotencyStore;
+import com.enicarthage.library.util.ETags;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -27,32 +30,52 @@ public class EventController {
     @Autowired
     private EventService eventService;
     
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+    
     @GetMapping
     public ResponseEntity<Page<Event>> getAllEvents(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "startDate") String sortBy,
-            @RequestParam(defaultValue = "asc") String sortDir) {
+            @RequestParam(defaultValue = "asc") String sortDir,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        String etag = ETags.of("events", eventService.getEventsFingerprint());
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
         
         Sort sort = sortDir.equalsIgnoreCase("desc") ? 
             Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
         Pageable pageable = PageRequest.of(page, size, sort);
         
         Page<Event> events = eventService.getAllEvents(pageable);
-        return ResponseEntity.ok(events);
+        return ResponseEntity.ok().eTag(etag).body(events);
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<Event> getEventById(@PathVariable Long id) {
+    public ResponseEntity<Event> getEventById(@PathVariable Long id,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         Optional<Event> event = eventService.getEventById(id);
-        return event.map(ResponseEntity::ok)
-                  .orElse(ResponseEntity.notFound().build());
+        if (event.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = ETags.of("event", id, event.get().getVersion());
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
+        return ResponseEntity.ok().eTag(etag).body(event.get());
     }
     
     @GetMapping("/upcoming")
-    public ResponseEntity<List<Event>> getUpcomingEvents() {
+    public ResponseEntity<List<Event>> getUpcomingEvents(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = ETags.of("upcoming", eventService.getUpcomingEventsFingerprint());
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
         List<Event> events = eventService.getUpcomingEvents();
-        return ResponseEntity.ok(events);
+        return ResponseEntity.ok().eTag(etag).body(events);
     }
     
     @GetMapping("/ongoing")
@@ -150,23 +173,26 @@ public class EventController {
     
     @PostMapping("/{id}/register")
     @PreAuthorize("hasRole('STUDENT') or hasRole('FACULTY')")
-    public ResponseEntity<?> registerForEvent(@PathVariable Long id) {
-        try {
-            // Get current user ID from authentication
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication != null && authentication.getPrincipal() instanceof com.enicarthage.library.entity.User) {
-                com.enicarthage.library.entity.User currentUser = (com.enicarthage.library.entity.User) authentication.getPrincipal();
-                eventService.registerForEvent(id, currentUser.getId());
-                Map<String, String> response = new HashMap<>();
-                response.put("message", "Successfully registered for event");
-                return ResponseEntity.ok(response);
+    public ResponseEntity<?> registerForEvent(@PathVariable Long id,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return idempotencyStore.execute(idempotencyKey, "register:" + id, () -> {
+            try {
+                // Get current user ID from authentication
+                Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+                if (authentication != null && authentication.getPrincipal() instanceof com.enicarthage.library.entity.User) {
+                    com.enicarthage.library.entity.User currentUser = (com.enicarthage.library.entity.User) authentication.getPrincipal();
+                    eventService.registerForEvent(id, currentUser.getId());
+                    Map<String, String> response = new HashMap<>();
+                    response.put("message", "Successfully registered for event");
+                    return ResponseEntity.ok(response);
+                }
+                return ResponseEntity.badRequest().body("User not authenticated");
+            } catch (Exception e) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", e.getMessage());
+                return ResponseEntity.badRequest().body(error);
             }
-            return ResponseEntity.badRequest().body("User not authenticated");
-        } catch (Exception e) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(error);
-        }
+        });
     }
     
     @DeleteMapping("/{id}/unregister")
@@ -0,0 +1,96 @@
+package com.enicarthage.library.controller;
+
+import com.enicarthage.library.entity.Reservation;
+import com.enicarthage.library.service.ReservationExpiryService;
+import com.enicarthage.library.service.ReservationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/reservations")
+@CrossOrigin(origins = "*")
+public class ReservationController {
+    
+    @Autowired
+    private ReservationService reservationService;
+    
+    @Autowired
+    private ReservationExpiryService reservationExpiryService;
+    
+    @PostMapping
+    @PreAuthorize("hasRole('STUDENT') or hasRole('FACULTY')")
+    public ResponseEntity<?> reserveBook(@RequestParam Long bookId, @RequestParam Long userId) {
+        try {
+            Reservation reservation = reservationService.reserveBook(bookId, userId);
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Book reserved successfully");
+            response.put("reservation", reservation);
+            response.put("queuePosition", reservationService.getQueuePosition(reservation));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+    
+    @PostMapping("/{id}/cancel")
+    @PreAuthorize("hasRole('STUDENT') or hasRole('FACULTY') or hasRole('LIBRARIAN')")
+    public ResponseEntity<?> cancelReservation(@PathVariable Long id) {
+        try {
+            Map<String, Object> response = new HashMap<>(reservationService.cancelReservation(id));
+            response.put("message", "Reservation cancelled successfully");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+    
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getReservationById(@PathVariable Long id) {
+        Optional<Reservation> reservation = reservationService.getReservationById(id);
+        if (reservation.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("reservation", reservation.get());
+        response.put("queuePosition", reservationService.getQueuePosition(reservation.get()));
+        return ResponseEntity.ok(response);
+    }
+    
+    @GetMapping("/user/{userId}")
+    public ResponseEntity<List<Reservation>> getReservationsByUser(@PathVariable Long userId) {
+        List<Reservation> reservations = reservationService.getReservationsByUser(userId);
+        return ResponseEntity.ok(reservations);
+    }
+    
+    @GetMapping("/book/{bookId}/queue")
+    @PreAuthorize("hasRole('LIBRARIAN') or hasRole('ADMIN')")
+    public ResponseEntity<List<Reservation>> getQueue(@PathVariable Long bookId) {
+        List<Reservation> queue = reservationService.getQueue(bookId);
+        return ResponseEntity.ok(queue);
+    }
+    
+    @GetMapping("/statistics")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('LIBRARIAN')")
+    public ResponseEntity<Map<String, Object>> getReservationStatistics() {
+        Map<String, Object> statistics = reservationService.getReservationStatistics();
+        statistics.put("expiry", reservationExpiryService.getStatistics());
+        return ResponseEntity.ok(statistics);
+    }
+    
+    @PostMapping("/expire")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> expireHolds() {
+        return ResponseEntity.ok(reservationExpiryService.expireHolds());
+    }
+}
@@ -10,7 +10,13 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "books")
+@Table(name = "books", indexes = {
+    @Index(name = "idx_books_title_id", columnList = "title, id"),
+    @Index(name = "idx_books_author_id", columnList = "author, id"),
+    @Index(name = "idx_books_publication_year_id", columnList = "publication_year, id"),
+    @Index(name = "idx_books_created_at_id", columnList = "created_at, id"),
+    @Index(name = "idx_books_isbn", columnList = "isbn")
+})
 public class Book {
     
     @Id
@@ -75,6 +81,11 @@ public class Book {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
     
+    // Incremented on every update; also serves as the book's ETag
+    @Version
+    @Column(name = "version", columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private Long version;
+    
     @OneToMany(mappedBy = "book", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Borrowing> borrowings;
     
@@ -150,6 +161,9 @@ public class Book {
     public LocalDateTime getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
     
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+    
     public List<Borrowing> getBorrowings() { return borrowings; }
     public void setBorrowings(List<Borrowing> borrowings) { this.borrowings = borrowings; }
     
@@ -0,0 +1,60 @@
+package com.enicarthage.library.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of the catalog change feed. Only the latest change per book is kept, so the feed stays
+ * about as large as the catalog plus its tombstones.
+ */
+@Entity
+@Table(name = "book_changes", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_book_changes_book_id", columnNames = "book_id")
+}, indexes = {
+    @Index(name = "idx_book_changes_changed_at", columnList = "changed_at")
+})
+public class BookChange {
+    
+    // Feed position: clients resume from the last id they have seen. Assigned from
+    // book_change_sequence at commit, not at insert, so ids become visible in increasing order
+    @Id
+    private Long id;
+    
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ChangeType type;
+    
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+    
+    public BookChange() {
+        this.changedAt = LocalDateTime.now();
+    }
+    
+    public BookChange(Long bookId, ChangeType type) {
+        this();
+        this.bookId = bookId;
+        this.type = type;
+    }
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public Long getBookId() { return bookId; }
+    public void setBookId(Long bookId) { this.bookId = bookId; }
+    
+    public ChangeType getType() { return type; }
+    public void setType(ChangeType type) { this.type = type; }
+    
+    public LocalDateTime getChangedAt() { return changedAt; }
+    public void setChangedAt(LocalDateTime changedAt) { this.changedAt = changedAt; }
+    
+    public enum ChangeType {
+        UPSERT, DELETE
+    }
+}
@@ -0,0 +1,25 @@
+package com.enicarthage.library.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * Single-row counter handing out change feed positions. A transaction takes its positions just
+ * before committing and holds the row lock until the commit, so positions become visible in order.
+ */
+@Entity
+@Table(name = "book_change_sequence")
+public class BookChangeSequence {
+    
+    @Id
+    private Integer id;
+    
+    @Column(name = "last_position", nullable = false)
+    private Long lastPosition;
+    
+    // Getters and Setters
+    public Integer getId() { return id; }
+    public void setId(Integer id) { this.id = id; }
+    
+    public Long getLastPosition() { return lastPosition; }
+    public void setLastPosition(Long lastPosition) { this.lastPosition = lastPosition; }
+}
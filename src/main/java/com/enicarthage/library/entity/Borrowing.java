@@ -6,7 +6,11 @@ import jakarta.validation.constraints.NotNull;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "borrowings")
+@Table(name = "borrowings", indexes = {
+    @Index(name = "idx_borrowings_borrow_date_id", columnList = "borrow_date, id"),
+    @Index(name = "idx_borrowings_due_date_id", columnList = "due_date, id"),
+    @Index(name = "idx_borrowings_status_return_date", columnList = "status, return_date")
+})
 public class Borrowing {
     
     @Id
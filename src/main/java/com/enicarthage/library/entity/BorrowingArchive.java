@@ -0,0 +1,109 @@
+package com.enicarthage.library.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A closed loan moved out of the live borrowings table. Keeps the original borrowing id and plain
+ * user and book ids, so archived history survives independently of the hot table.
+ */
+@Entity
+@Table(name = "borrowing_archive", indexes = {
+    @Index(name = "idx_borrowing_archive_user_id", columnList = "user_id, borrow_date"),
+    @Index(name = "idx_borrowing_archive_book_id", columnList = "book_id, borrow_date")
+})
+public class BorrowingArchive {
+    
+    @Id
+    private Long id;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+    
+    @Column(name = "borrow_date")
+    private LocalDateTime borrowDate;
+    
+    @Column(name = "due_date")
+    private LocalDateTime dueDate;
+    
+    @Column(name = "return_date")
+    private LocalDateTime returnDate;
+    
+    @Enumerated(EnumType.STRING)
+    private Borrowing.BorrowingStatus status;
+    
+    @Column(name = "fine_amount")
+    private Double fineAmount;
+    
+    @Column(name = "notes")
+    private String notes;
+    
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    @Column(name = "archived_at")
+    private LocalDateTime archivedAt;
+    
+    /**
+     * Rebuilds the loan as a detached Borrowing for history responses.
+     */
+    public Borrowing toBorrowing(User user, Book book) {
+        Borrowing borrowing = new Borrowing();
+        borrowing.setId(id);
+        borrowing.setUser(user);
+        borrowing.setBook(book);
+        borrowing.setBorrowDate(borrowDate);
+        borrowing.setDueDate(dueDate);
+        borrowing.setReturnDate(returnDate);
+        borrowing.setStatus(status);
+        borrowing.setFineAmount(fineAmount);
+        borrowing.setNotes(notes);
+        borrowing.setCreatedAt(createdAt);
+        borrowing.setUpdatedAt(updatedAt);
+        return borrowing;
+    }
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    
+    public Long getBookId() { return bookId; }
+    public void setBookId(Long bookId) { this.bookId = bookId; }
+    
+    public LocalDateTime getBorrowDate() { return borrowDate; }
+    public void setBorrowDate(LocalDateTime borrowDate) { this.borrowDate = borrowDate; }
+    
+    public LocalDateTime getDueDate() { return dueDate; }
+    public void setDueDate(LocalDateTime dueDate) { this.dueDate = dueDate; }
+    
+    public LocalDateTime getReturnDate() { return returnDate; }
+    public void setReturnDate(LocalDateTime returnDate) { this.returnDate = returnDate; }
+    
+    public Borrowing.BorrowingStatus getStatus() { return status; }
+    public void setStatus(Borrowing.BorrowingStatus status) { this.status = status; }
+    
+    public Double getFineAmount() { return fineAmount; }
+    public void setFineAmount(Double fineAmount) { this.fineAmount = fineAmount; }
+    
+    public String getNotes() { return notes; }
+    public void setNotes(String notes) { this.notes = notes; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    
+    public LocalDateTime getArchivedAt() { return archivedAt; }
+    public void setArchivedAt(LocalDateTime archivedAt) { this.archivedAt = archivedAt; }
+}
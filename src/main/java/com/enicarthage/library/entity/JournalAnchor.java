@@ -0,0 +1,39 @@
+package com.enicarthage.library.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Single-row copy of the circulation journal's durable head, kept outside the journal so that
+ * verification notices records dropped from its end or a journal rewritten from scratch.
+ */
+@Entity
+@Table(name = "journal_anchor")
+public class JournalAnchor {
+    
+    @Id
+    private Integer id;
+    
+    @Column(name = "last_sequence", nullable = false)
+    private Long lastSequence;
+    
+    @Column(name = "head_chain", nullable = false)
+    private Long headChain;
+    
+    @Column(name = "anchored_at")
+    private LocalDateTime anchoredAt;
+    
+    // Getters and Setters
+    public Integer getId() { return id; }
+    public void setId(Integer id) { this.id = id; }
+    
+    public Long getLastSequence() { return lastSequence; }
+    public void setLastSequence(Long lastSequence) { this.lastSequence = lastSequence; }
+    
+    public Long getHeadChain() { return headChain; }
+    public void setHeadChain(Long headChain) { this.headChain = headChain; }
+    
+    public LocalDateTime getAnchoredAt() { return anchoredAt; }
+    public void setAnchoredAt(LocalDateTime anchoredAt) { this.anchoredAt = anchoredAt; }
+}
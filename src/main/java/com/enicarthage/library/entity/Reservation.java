@@ -6,7 +6,10 @@ import jakarta.validation.constraints.NotNull;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "reservations")
+@Table(name = "reservations", indexes = {
+    @Index(name = "idx_reservations_book_status_date", columnList = "book_id, status, reservation_date, id"),
+    @Index(name = "idx_reservations_status_expiry_date", columnList = "status, expiry_date")
+})
 public class Reservation {
     
     @Id
@@ -0,0 +1,108 @@
+package com.enicarthage.library.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Segment file layout shared by the writer and reader. A segment is a 64-byte header (magic,
+ * version, record size, first sequence, chain value before the first record) followed by
+ * fixed-size records; unwritten slots are zero. The journal starts at sequence 1 with a zero chain,
+ * and the chain is keyed with the configured secret, so records cannot be rewritten or forged
+ * without it.
+ */
+final class JournalFormat {
+    
+    static final long MAGIC = 0x434952434A524E4CL; // "CIRCJRNL"
+    // 2: chain keyed with HMAC-SHA256 instead of a plain SHA-256
+    static final int VERSION = 2;
+    static final long FIRST_SEQUENCE = 1;
+    static final int HEADER_SIZE = 64;
+    
+    private static final String PREFIX = "circulation-";
+    private static final String SUFFIX = ".journal";
+    
+    private JournalFormat() {
+    }
+    
+    static Path segmentPath(Path directory, long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+    }
+    
+    // Zero-padded names sort in sequence order
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+    
+    static void writeHeader(ByteBuffer buffer, long firstSequence, long startChain) {
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, VERSION);
+        buffer.putInt(12, JournalRecord.SIZE);
+        buffer.putLong(16, firstSequence);
+        buffer.putLong(24, startChain);
+    }
+    
+    static void checkHeader(ByteBuffer buffer, Path segment) {
+        if (buffer.getLong(0) != MAGIC || buffer.getInt(12) != JournalRecord.SIZE) {
+            throw new IllegalStateException("Not a circulation journal segment: " + segment);
+        }
+        if (buffer.getInt(8) != VERSION) {
+            throw new IllegalStateException("Unsupported journal version " + buffer.getInt(8) + " in " + segment);
+        }
+    }
+    
+    static long firstSequence(ByteBuffer buffer) {
+        return buffer.getLong(16);
+    }
+    
+    static long startChain(ByteBuffer buffer) {
+        return buffer.getLong(24);
+    }
+    
+    static Mac newMac(byte[] key) {
+        if (key == null || key.length == 0) {
+            throw new IllegalArgumentException("Journal secret is not configured");
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+    
+    /**
+     * Chain value of the record at offset: the first 8 bytes of HMAC-SHA256 over the previous chain
+     * value and the record's bytes up to the chain field.
+     */
+    static long chain(Mac mac, long previous, ByteBuffer buffer, int offset) {
+        mac.reset();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            mac.update((byte) (previous >>> shift));
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.limit(offset + JournalRecord.CHAIN_OFFSET).position(offset);
+        mac.update(record);
+        return ByteBuffer.wrap(mac.doFinal()).getLong();
+    }
+}
@@ -0,0 +1,95 @@
+package com.enicarthage.library.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import javax.crypto.Mac;
+
+/**
+ * Reads the journal back in sequence order, re-computing the keyed hash chain across all segments
+ * from the start of the journal. Any gap, reordering, missing leading segment or edited byte breaks
+ * the chain and stops the replay with an exception naming the segment and sequence. Records dropped
+ * from the end leave a valid chain, so callers pass an anchor (a sequence and chain value recorded
+ * outside the journal) that the replay must reach and match.
+ */
+public class JournalReader {
+    
+    private final Path directory;
+    private final Mac mac;
+    
+    public JournalReader(Path directory, byte[] key) {
+        this.directory = directory;
+        this.mac = JournalFormat.newMac(key);
+    }
+    
+    /**
+     * Passes every record to the consumer after verifying it, without an anchor.
+     *
+     * @return the number of records read
+     */
+    public long replay(Consumer<JournalRecord> consumer) throws IOException {
+        return replay(consumer, 0, 0);
+    }
+    
+    /**
+     * Passes every record to the consumer after verifying it, and checks that the record at
+     * anchorSequence has the anchored chain value. An anchorSequence of 0 checks nothing.
+     *
+     * @return the number of records read
+     */
+    public long replay(Consumer<JournalRecord> consumer, long anchorSequence, long anchorChain) throws IOException {
+        long expectedSequence = -1;
+        long chain = 0;
+        long records = 0;
+        boolean anchored = anchorSequence == 0;
+        
+        for (Path segment : JournalFormat.listSegments(directory)) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                JournalFormat.checkHeader(buffer, segment);
+                long firstSequence = JournalFormat.firstSequence(buffer);
+                if (expectedSequence < 0) {
+                    if (firstSequence != JournalFormat.FIRST_SEQUENCE || JournalFormat.startChain(buffer) != 0) {
+                        throw new IllegalStateException("Journal does not start at sequence "
+                                + JournalFormat.FIRST_SEQUENCE + ": first segment is " + segment);
+                    }
+                    expectedSequence = firstSequence;
+                } else if (firstSequence != expectedSequence || JournalFormat.startChain(buffer) != chain) {
+                    throw new IllegalStateException("Journal segment " + segment + " does not continue the previous one");
+                }
+                
+                int offset = JournalFormat.HEADER_SIZE;
+                while (offset + JournalRecord.SIZE <= buffer.capacity()
+                        && buffer.getInt(offset + JournalRecord.TYPE_OFFSET) != 0) {
+                    JournalRecord record = JournalRecord.read(buffer, offset);
+                    if (record.getSequence() != expectedSequence || record.getType() == null
+                            || record.getChain() != JournalFormat.chain(mac, chain, buffer, offset)) {
+                        throw new IllegalStateException("Journal chain broken in " + segment + " at sequence "
+                                + expectedSequence);
+                    }
+                    if (record.getSequence() == anchorSequence) {
+                        if (record.getChain() != anchorChain) {
+                            throw new IllegalStateException("Journal does not match its anchor at sequence "
+                                    + anchorSequence);
+                        }
+                        anchored = true;
+                    }
+                    consumer.accept(record);
+                    chain = record.getChain();
+                    expectedSequence++;
+                    records++;
+                    offset += JournalRecord.SIZE;
+                }
+            }
+        }
+        if (!anchored) {
+            long last = expectedSequence < 0 ? 0 : expectedSequence - 1;
+            throw new IllegalStateException("Journal ends at sequence " + last + ", before its anchored sequence "
+                    + anchorSequence);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,89 @@
+package com.enicarthage.library.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One circulation event in the journal's fixed 64-byte layout:
+ * <pre>
+ *  0 sequence      8 timestamp (epoch ms)   16 borrowing id   24 user id
+ * 32 book id      40 value                  48 type           52 reserved
+ * 56 chain (first 8 bytes of HMAC-SHA256 over the previous chain and bytes 0-55)
+ * </pre>
+ * The value is the due date in epoch milliseconds for BORROW and EXTEND, and the fine in cents for
+ * RETURN and FINE.
+ */
+public final class JournalRecord {
+    
+    public static final int SIZE = 64;
+    static final int CHAIN_OFFSET = 56;
+    static final int TYPE_OFFSET = 48;
+    
+    public enum Type {
+        BORROW, RETURN, EXTEND, FINE;
+        
+        // 0 marks an unwritten slot
+        int code() {
+            return ordinal() + 1;
+        }
+        
+        static Type of(int code) {
+            Type[] types = values();
+            return code >= 1 && code <= types.length ? types[code - 1] : null;
+        }
+    }
+    
+    private final long sequence;
+    private final long timestamp;
+    private final Type type;
+    private final long borrowingId;
+    private final long userId;
+    private final long bookId;
+    private final long value;
+    private final long chain;
+    
+    JournalRecord(long sequence, long timestamp, Type type, long borrowingId, long userId, long bookId,
+                  long value, long chain) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.borrowingId = borrowingId;
+        this.userId = userId;
+        this.bookId = bookId;
+        this.value = value;
+        this.chain = chain;
+    }
+    
+    static JournalRecord read(ByteBuffer buffer, int offset) {
+        return new JournalRecord(
+                buffer.getLong(offset),
+                buffer.getLong(offset + 8),
+                Type.of(buffer.getInt(offset + TYPE_OFFSET)),
+                buffer.getLong(offset + 16),
+                buffer.getLong(offset + 24),
+                buffer.getLong(offset + 32),
+                buffer.getLong(offset + 40),
+                buffer.getLong(offset + CHAIN_OFFSET));
+    }
+    
+    // Everything except the chain, which is computed over these bytes
+    static void write(ByteBuffer buffer, int offset, long sequence, long timestamp, Type type, long borrowingId,
+                      long userId, long bookId, long value) {
+        buffer.putLong(offset, sequence);
+        buffer.putLong(offset + 8, timestamp);
+        buffer.putLong(offset + 16, borrowingId);
+        buffer.putLong(offset + 24, userId);
+        buffer.putLong(offset + 32, bookId);
+        buffer.putLong(offset + 40, value);
+        buffer.putInt(offset + TYPE_OFFSET, type.code());
+        buffer.putInt(offset + 52, 0);
+    }
+    
+    public long getSequence() { return sequence; }
+    public long getTimestamp() { return timestamp; }
+    public Type getType() { return type; }
+    public long getBorrowingId() { return borrowingId; }
+    public long getUserId() { return userId; }
+    public long getBookId() { return bookId; }
+    public long getValue() { return value; }
+    public long getChain() { return chain; }
+}
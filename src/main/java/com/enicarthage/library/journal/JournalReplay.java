@@ -0,0 +1,88 @@
+package com.enicarthage.library.journal;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Offline replay of a journal directory. Verifies the whole chain and either rebuilds circulation
+ * state (active loans per user and book, fine totals) or dumps the records as CSV for analytics.
+ * The chain key is read from the LIBRARY_JOURNAL_SECRET environment variable:
+ * <pre>
+ * LIBRARY_JOURNAL_SECRET=... java -cp library.jar -Dloader.main=com.enicarthage.library.journal.JournalReplay \
+ *     org.springframework.boot.loader.launch.PropertiesLauncher &lt;journal-dir&gt; [summary|csv]
+ * </pre>
+ */
+public class JournalReplay {
+    
+    private final Map<Long, long[]> activeLoans = new HashMap<>();
+    private final Map<JournalRecord.Type, Long> counts = new EnumMap<>(JournalRecord.Type.class);
+    private final Map<Long, Long> finesByBorrowing = new HashMap<>();
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: JournalReplay <journal-dir> [summary|csv]");
+            System.exit(2);
+        }
+        String secret = System.getenv("LIBRARY_JOURNAL_SECRET");
+        if (secret == null || secret.isEmpty()) {
+            System.err.println("LIBRARY_JOURNAL_SECRET must be set to the journal's secret");
+            System.exit(2);
+        }
+        JournalReader reader = new JournalReader(Path.of(args[0]), secret.getBytes(StandardCharsets.UTF_8));
+        if (args.length > 1 && args[1].equalsIgnoreCase("csv")) {
+            PrintStream out = System.out;
+            out.println("sequence,timestamp,type,borrowingId,userId,bookId,value");
+            reader.replay(record -> out.println(record.getSequence() + "," + Instant.ofEpochMilli(record.getTimestamp())
+                    + "," + record.getType() + "," + record.getBorrowingId() + "," + record.getUserId() + ","
+                    + record.getBookId() + "," + record.getValue()));
+            return;
+        }
+        JournalReplay replay = new JournalReplay();
+        long records = reader.replay(replay::apply);
+        replay.summary(records).forEach((key, value) -> System.out.println(key + ": " + value));
+    }
+    
+    public void apply(JournalRecord record) {
+        counts.merge(record.getType(), 1L, Long::sum);
+        switch (record.getType()) {
+            case BORROW, EXTEND -> activeLoans.put(record.getBorrowingId(),
+                    new long[]{record.getUserId(), record.getBookId(), record.getValue()});
+            case RETURN -> {
+                activeLoans.remove(record.getBorrowingId());
+                finesByBorrowing.put(record.getBorrowingId(), record.getValue());
+            }
+            case FINE -> finesByBorrowing.put(record.getBorrowingId(), record.getValue());
+        }
+    }
+    
+    /**
+     * Active loans keyed by borrowing id, as {userId, bookId, due date in epoch milliseconds}.
+     */
+    public Map<Long, long[]> getActiveLoans() {
+        return activeLoans;
+    }
+    
+    public Map<String, Object> summary(long records) {
+        long fineCents = 0;
+        for (long cents : finesByBorrowing.values()) {
+            fineCents += cents;
+        }
+        long now = System.currentTimeMillis();
+        long overdue = activeLoans.values().stream().filter(loan -> loan[2] < now).count();
+        
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("records", records);
+        summary.put("events", counts);
+        summary.put("activeLoans", activeLoans.size());
+        summary.put("overdueLoans", overdue);
+        summary.put("totalFines", fineCents / 100.0);
+        return summary;
+    }
+}
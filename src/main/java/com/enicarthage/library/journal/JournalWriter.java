@@ -0,0 +1,214 @@
+package com.enicarthage.library.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.crypto.Mac;
+
+/**
+ * Appends records to memory-mapped segment files. An append is a few stores into the mapped page
+ * cache; durability comes from {@link #force()}, which the owner calls periodically so one fsync
+ * covers every record appended since the last one (group commit). A full segment is forced and a
+ * new one started. On open the last segment is scanned to find the end and re-verify its chain; a
+ * torn final record left by a crash is cleared, anything else that fails verification is refused.
+ */
+public class JournalWriter implements Closeable {
+    
+    private final Path directory;
+    private final int segmentSize;
+    private final Mac mac;
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private long nextSequence;
+    private long lastChain;
+    private int segments;
+    private volatile long durableSequence;
+    
+    /**
+     * @param key secret the hash chain is keyed with; readers need the same key
+     */
+    public JournalWriter(Path directory, int segmentSizeBytes, byte[] key) throws IOException {
+        this.directory = directory;
+        this.mac = JournalFormat.newMac(key);
+        // Whole records after the header
+        this.segmentSize = JournalFormat.HEADER_SIZE
+                + Math.max(1, (segmentSizeBytes - JournalFormat.HEADER_SIZE) / JournalRecord.SIZE) * JournalRecord.SIZE;
+        Files.createDirectories(directory);
+        
+        List<Path> existing = JournalFormat.listSegments(directory);
+        segments = existing.size();
+        if (existing.isEmpty()) {
+            startSegment(JournalFormat.FIRST_SEQUENCE, 0L);
+        } else {
+            recover(existing.get(existing.size() - 1));
+        }
+        durableSequence = nextSequence - 1;
+    }
+    
+    /**
+     * @return the record's sequence number
+     */
+    public long append(JournalRecord.Type type, long borrowingId, long userId, long bookId, long value) throws IOException {
+        lock.lock();
+        try {
+            if (position + JournalRecord.SIZE > buffer.capacity()) {
+                buffer.force();
+                channel.close();
+                startSegment(nextSequence, lastChain);
+            }
+            long sequence = nextSequence;
+            JournalRecord.write(buffer, position, sequence, System.currentTimeMillis(), type, borrowingId, userId,
+                    bookId, value);
+            lastChain = JournalFormat.chain(mac, lastChain, buffer, position);
+            buffer.putLong(position + JournalRecord.CHAIN_OFFSET, lastChain);
+            position += JournalRecord.SIZE;
+            nextSequence++;
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Flushes everything appended so far to disk.
+     *
+     * @return the highest durable sequence number
+     */
+    public long force() {
+        MappedByteBuffer current;
+        long appended;
+        lock.lock();
+        try {
+            current = buffer;
+            appended = nextSequence - 1;
+        } finally {
+            lock.unlock();
+        }
+        if (appended > durableSequence) {
+            // Outside the lock so appends continue while the pages are written
+            current.force();
+            durableSequence = appended;
+        }
+        return durableSequence;
+    }
+    
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return nextSequence - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+    
+    public long getLastChain() {
+        lock.lock();
+        try {
+            return lastChain;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * The last sequence number and its chain value, read together.
+     *
+     * @return {last sequence, chain}
+     */
+    public long[] getHead() {
+        lock.lock();
+        try {
+            return new long[]{nextSequence - 1, lastChain};
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getSegments() {
+        lock.lock();
+        try {
+            return segments;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public Path getDirectory() {
+        return directory;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        force();
+        lock.lock();
+        try {
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void startSegment(long firstSequence, long startChain) throws IOException {
+        Path segment = JournalFormat.segmentPath(directory, firstSequence);
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        JournalFormat.writeHeader(buffer, firstSequence, startChain);
+        buffer.force();
+        position = JournalFormat.HEADER_SIZE;
+        nextSequence = firstSequence;
+        lastChain = startChain;
+        segments++;
+    }
+    
+    private void recover(Path segment) throws IOException {
+        channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, segmentSize));
+        JournalFormat.checkHeader(buffer, segment);
+        
+        long sequence = JournalFormat.firstSequence(buffer);
+        long chain = JournalFormat.startChain(buffer);
+        int offset = JournalFormat.HEADER_SIZE;
+        int capacity = buffer.capacity();
+        while (offset + JournalRecord.SIZE <= capacity && buffer.getInt(offset + JournalRecord.TYPE_OFFSET) != 0) {
+            long expected = JournalFormat.chain(mac, chain, buffer, offset);
+            if (buffer.getLong(offset) != sequence || buffer.getLong(offset + JournalRecord.CHAIN_OFFSET) != expected) {
+                clearTornRecord(segment, offset, sequence);
+                break;
+            }
+            chain = expected;
+            sequence++;
+            offset += JournalRecord.SIZE;
+        }
+        position = offset;
+        nextSequence = sequence;
+        lastChain = chain;
+    }
+    
+    // Only the final record may be incomplete; a bad record followed by others means tampering
+    private void clearTornRecord(Path segment, int offset, long sequence) {
+        int next = offset + JournalRecord.SIZE;
+        if (next + JournalRecord.SIZE <= buffer.capacity() && buffer.getInt(next + JournalRecord.TYPE_OFFSET) != 0) {
+            throw new IllegalStateException("Journal chain broken in " + segment + " at sequence " + sequence);
+        }
+        for (int i = offset; i < next; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.force();
+        System.err.println("Cleared incomplete journal record " + sequence + " in " + segment);
+    }
+}
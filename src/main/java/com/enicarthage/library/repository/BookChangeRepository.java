@@ -0,0 +1,22 @@
+package com.enicarthage.library.repository;
+
+import com.enicarthage.library.entity.BookChange;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface BookChangeRepository extends JpaRepository<BookChange, Long> {
+    
+    List<BookChange> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+    
+    Optional<BookChange> findFirstByChangedAtGreaterThanEqualOrderByIdAsc(LocalDateTime changedAt);
+    
+    @Query("SELECT COALESCE(MAX(c.id), 0) FROM BookChange c")
+    Long findLatestId();
+}
@@ -1,14 +1,24 @@
 package com.enicarthage.library.repository;
 
 import com.enicarthage.library.entity.Book;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface BookRepository extends JpaRepository<Book, Long> {
@@ -25,6 +35,33 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     
     List<Book> findByPublisherContainingIgnoreCase(String publisher);
     
+    List<Book> findTop500ByIdGreaterThanOrderByIdAsc(Long id);
+    
+    Window<Book> findAllBy(ScrollPosition position, Sort sort, Limit limit);
+    
+    @Query("SELECT b.id, b.availableCopies FROM Book b WHERE b.id IN :ids")
+    List<Object[]> findAvailableCopiesByIdIn(@Param("ids") Collection<Long> ids);
+    
+    // Conditional in-place decrement: the UPDATE's row lock orders concurrent checkouts and the
+    // WHERE clause makes overselling impossible. Returns 0 when no copy is left.
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies - 1, b.version = b.version + 1, b.updatedAt = :now " +
+           "WHERE b.id = :id AND b.availableCopies > 0")
+    int decrementAvailableCopies(@Param("id") Long id, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies + 1, b.version = b.version + 1, b.updatedAt = :now " +
+           "WHERE b.id = :id AND b.availableCopies < b.totalCopies")
+    int incrementAvailableCopies(@Param("id") Long id, @Param("now") LocalDateTime now);
+    
+    // Scalar rows are not managed entities, and a fetch size of Integer.MIN_VALUE makes the MySQL
+    // driver stream the result set instead of buffering it
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "" + Integer.MIN_VALUE))
+    @Query("SELECT b.id, b.title, b.author, b.isbn, b.publisher, b.publicationYear, b.category, b.status, " +
+           "b.totalCopies, b.availableCopies, b.shelfLocation, b.language, b.pages, b.price, b.createdAt, b.updatedAt " +
+           "FROM Book b ORDER BY b.id")
+    Stream<Object[]> streamForExport();
+    
     @Query("SELECT b FROM Book b WHERE b.title LIKE %:searchTerm% OR b.author LIKE %:searchTerm% OR b.isbn LIKE %:searchTerm%")
     List<Book> findBySearchTerm(@Param("searchTerm") String searchTerm);
     
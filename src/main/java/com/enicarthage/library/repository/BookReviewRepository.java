@@ -32,6 +32,8 @@ public interface BookReviewRepository extends JpaRepository<BookReview, Long> {
     
     List<BookReview> findByBookAndIsVerified(Book book, Boolean isVerified);
     
+    List<BookReview> findTop500ByIdGreaterThanOrderByIdAsc(Long id);
+    
     Long countByBook(Book book);
     
     Long countByUser(User user);
@@ -40,6 +42,18 @@ public interface BookReviewRepository extends JpaRepository<BookReview, Long> {
     
     Long countByIsVerified(Boolean isVerified);
     
+    @Query("SELECT r.id FROM BookReview r WHERE r.book.id = :bookId")
+    List<Long> findIdsByBookId(@Param("bookId") Long bookId);
+    
+    @Query("SELECT r.id FROM BookReview r WHERE r.user.id = :userId")
+    List<Long> findIdsByUserId(@Param("userId") Long userId);
+    
+    @Query("SELECT r.rating, COUNT(r) FROM BookReview r WHERE r.book.id = :bookId GROUP BY r.rating")
+    List<Object[]> countByRatingForBook(@Param("bookId") Long bookId);
+    
+    @Query("SELECT r.rating, r.isVerified, COUNT(r) FROM BookReview r GROUP BY r.rating, r.isVerified")
+    List<Object[]> countByRatingAndVerified();
+    
     @Query("SELECT AVG(r.rating) FROM BookReview r WHERE r.book = :book")
     Double getAverageRatingByBook(@Param("book") Book book);
     
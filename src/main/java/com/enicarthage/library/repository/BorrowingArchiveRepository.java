@@ -0,0 +1,31 @@
+package com.enicarthage.library.repository;
+
+import com.enicarthage.library.entity.BorrowingArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Repository
+public interface BorrowingArchiveRepository extends JpaRepository<BorrowingArchive, Long> {
+    
+    List<BorrowingArchive> findByUserIdOrderByBorrowDateDesc(Long userId);
+    
+    List<BorrowingArchive> findByBookIdOrderByBorrowDateDesc(Long bookId);
+    
+    @Query("SELECT a.status, COUNT(a), SUM(a.fineAmount) FROM BorrowingArchive a GROUP BY a.status")
+    List<Object[]> summarizeByStatus();
+    
+    @Query("SELECT a.bookId, COUNT(a) FROM BorrowingArchive a GROUP BY a.bookId")
+    List<Object[]> countBorrowingsPerBook();
+    
+    // Same columns as BorrowingRepository.streamForExport
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "" + Integer.MIN_VALUE))
+    @Query("SELECT a.id, a.userId, a.bookId, a.borrowDate, a.dueDate, a.returnDate, a.status, a.fineAmount, a.notes " +
+           "FROM BorrowingArchive a ORDER BY a.id")
+    Stream<Object[]> streamForExport();
+}
@@ -3,19 +3,36 @@ package com.enicarthage.library.repository;
 import com.enicarthage.library.entity.Borrowing;
 import com.enicarthage.library.entity.User;
 import com.enicarthage.library.entity.Book;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface BorrowingRepository extends JpaRepository<Borrowing, Long> {
     
     List<Borrowing> findByUser(User user);
     
+    Window<Borrowing> findAllBy(ScrollPosition position, Sort sort, Limit limit);
+    
+    // See BookRepository.streamForExport
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "" + Integer.MIN_VALUE))
+    @Query("SELECT b.id, b.user.id, b.book.id, b.borrowDate, b.dueDate, b.returnDate, b.status, b.fineAmount, b.notes " +
+           "FROM Borrowing b ORDER BY b.id")
+    Stream<Object[]> streamForExport();
+    
     List<Borrowing> findByBook(Book book);
     
     List<Borrowing> findByStatus(Borrowing.BorrowingStatus status);
@@ -43,10 +60,36 @@ public interface BorrowingRepository extends JpaRepository<Borrowing, Long> {
     @Query("SELECT b FROM Borrowing b WHERE b.book = :book AND b.status = 'ACTIVE'")
     List<Borrowing> findActiveBorrowingsByBook(@Param("book") Book book);
     
+    @Query("SELECT b.book.id FROM Borrowing b WHERE b.id = :id")
+    Optional<Long> findBookIdById(@Param("id") Long id);
+    
+    @Query("SELECT b.book.id FROM Borrowing b WHERE b.user.id = :userId AND b.status = 'ACTIVE'")
+    List<Long> findActiveBookIdsByUserId(@Param("userId") Long userId);
+    
+    @Query("SELECT b.user.id, b.book.id FROM Borrowing b WHERE b.user.id IN :userIds AND b.status = 'ACTIVE'")
+    List<Object[]> findActiveLoansByUserIdIn(@Param("userIds") Collection<Long> userIds);
+    
+    @Query("SELECT b.id, b.dueDate FROM Borrowing b WHERE b.status = 'ACTIVE'")
+    List<Object[]> findActiveDueDates();
+    
+    @Query("SELECT b FROM Borrowing b JOIN FETCH b.user JOIN FETCH b.book WHERE b.id IN :ids AND b.status = 'ACTIVE'")
+    List<Borrowing> findActiveWithUserAndBookByIdIn(@Param("ids") Collection<Long> ids);
+    
+    @Query("SELECT DISTINCT b.book.id FROM Borrowing b WHERE b.id IN :ids")
+    List<Long> findBookIdsByIdIn(@Param("ids") Collection<Long> ids);
+    
+    List<Borrowing> findByUserAndStatusAndBookIdIn(User user, Borrowing.BorrowingStatus status, Collection<Long> bookIds);
+    
     List<Borrowing> findByUserAndBookAndStatus(User user, Book book, Borrowing.BorrowingStatus status);
     
     Long countByStatus(Borrowing.BorrowingStatus status);
     
     @Query("SELECT COUNT(b) FROM Borrowing b WHERE b.dueDate < :currentDate AND b.status = 'ACTIVE'")
     Long countOverdueBorrowings(@Param("currentDate") LocalDateTime currentDate);
+    
+    @Query("SELECT b.status, COUNT(b), SUM(b.fineAmount) FROM Borrowing b GROUP BY b.status")
+    List<Object[]> summarizeByStatus();
+    
+    @Query("SELECT b.book.id, COUNT(b) FROM Borrowing b GROUP BY b.book.id")
+    List<Object[]> countBorrowingsPerBook();
 }
\ No newline at end of file
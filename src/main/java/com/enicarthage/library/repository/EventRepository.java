@@ -23,6 +23,13 @@ public interface EventRepository extends JpaRepository<Event, Long> {
     @Query("SELECT e FROM Event e WHERE e.startDate >= :currentDate ORDER BY e.startDate ASC")
     List<Event> findUpcomingEvents(@Param("currentDate") LocalDateTime currentDate);
     
+    // Row count, last update and version sum: changes whenever a row is added, edited or removed
+    @Query("SELECT COUNT(e), MAX(e.updatedAt), COALESCE(SUM(e.version), 0) FROM Event e")
+    List<Object[]> summarizeEvents();
+    
+    @Query("SELECT COUNT(e), MAX(e.updatedAt), COALESCE(SUM(e.version), 0) FROM Event e WHERE e.startDate >= :currentDate")
+    List<Object[]> summarizeUpcomingEvents(@Param("currentDate") LocalDateTime currentDate);
+    
     @Query("SELECT e FROM Event e WHERE e.startDate <= :currentDate AND e.endDate >= :currentDate")
     List<Event> findOngoingEvents(@Param("currentDate") LocalDateTime currentDate);
     
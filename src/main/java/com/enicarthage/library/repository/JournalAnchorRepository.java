@@ -0,0 +1,9 @@
+package com.enicarthage.library.repository;
+
+import com.enicarthage.library.entity.JournalAnchor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface JournalAnchorRepository extends JpaRepository<JournalAnchor, Integer> {
+}
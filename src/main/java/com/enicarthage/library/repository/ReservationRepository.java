@@ -0,0 +1,79 @@
+package com.enicarthage.library.repository;
+
+import com.enicarthage.library.entity.Reservation;
+import com.enicarthage.library.entity.User;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.LockModeType;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ReservationRepository extends JpaRepository<Reservation, Long> {
+    
+    List<Reservation> findByUserOrderByReservationDateDesc(User user);
+    
+    @Query("SELECT r.book.id FROM Reservation r WHERE r.id = :id")
+    Optional<Long> findBookIdById(@Param("id") Long id);
+    
+    // Hold queue order
+    @Query("SELECT r.id FROM Reservation r WHERE r.book.id = :bookId AND r.status = 'PENDING' " +
+           "ORDER BY r.reservationDate, r.id")
+    List<Long> findPendingIdsByBookId(@Param("bookId") Long bookId);
+    
+    @Query("SELECT r FROM Reservation r WHERE r.book.id = :bookId AND r.status = 'PENDING' " +
+           "ORDER BY r.reservationDate, r.id")
+    List<Reservation> findPendingByBookId(@Param("bookId") Long bookId);
+    
+    @Query("SELECT r FROM Reservation r WHERE r.user.id = :userId AND r.book.id IN :bookIds " +
+           "AND r.status IN ('PENDING', 'CONFIRMED')")
+    List<Reservation> findOpenByUserIdAndBookIdIn(@Param("userId") Long userId, @Param("bookIds") Collection<Long> bookIds);
+    
+    @Query("SELECT r.book.id FROM Reservation r WHERE r.user.id = :userId AND r.book.id IN :bookIds " +
+           "AND r.status = 'CONFIRMED'")
+    List<Long> findHeldBookIds(@Param("userId") Long userId, @Param("bookIds") Collection<Long> bookIds);
+    
+    @Query("SELECT COUNT(r) FROM Reservation r WHERE r.user.id = :userId AND r.status IN ('PENDING', 'CONFIRMED')")
+    long countOpenByUserId(@Param("userId") Long userId);
+    
+    @Query("SELECT COUNT(r) FROM Reservation r WHERE r.book.id = :bookId AND r.status = 'PENDING' " +
+           "AND (r.reservationDate < :reservationDate OR (r.reservationDate = :reservationDate AND r.id < :id))")
+    long countPendingAhead(@Param("bookId") Long bookId, @Param("reservationDate") LocalDateTime reservationDate,
+                           @Param("id") Long id);
+    
+    @Modifying
+    @Query("UPDATE Reservation r SET r.status = 'CONFIRMED', r.expiryDate = :expiryDate, r.updatedAt = :now " +
+           "WHERE r.id = :id AND r.status = 'PENDING'")
+    int confirm(@Param("id") Long id, @Param("expiryDate") LocalDateTime expiryDate, @Param("now") LocalDateTime now);
+    
+    // Oldest first, served by the (status, expiry_date) index
+    @Query("SELECT r.id FROM Reservation r WHERE r.status = 'CONFIRMED' AND r.expiryDate < :now " +
+           "ORDER BY r.expiryDate, r.id")
+    List<Long> findExpiredHoldIds(@Param("now") LocalDateTime now, Limit limit);
+    
+    // SELECT ... FOR UPDATE, so the bulk expire changes exactly the rows returned
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r.id, r.book.id, r.expiryDate FROM Reservation r WHERE r.id IN :ids " +
+           "AND r.status = 'CONFIRMED' AND r.expiryDate < :now")
+    List<Object[]> findExpiredHoldsByIdIn(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+    
+    @Query("SELECT DISTINCT r.book.id FROM Reservation r WHERE r.id IN :ids")
+    List<Long> findBookIdsByIdIn(@Param("ids") Collection<Long> ids);
+    
+    @Modifying
+    @Query("UPDATE Reservation r SET r.status = 'EXPIRED', r.updatedAt = :now " +
+           "WHERE r.id IN :ids AND r.status = 'CONFIRMED'")
+    int expire(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+    
+    @Query("SELECT r.status, COUNT(r) FROM Reservation r GROUP BY r.status")
+    List<Object[]> countByStatus();
+}
@@ -0,0 +1,476 @@
+package com.enicarthage.library.search;
+
+import com.enicarthage.library.util.LongIntHashMap;
+import com.enicarthage.library.util.LongObjectHashMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Weighted prefix completion over a radix (path-compressed) trie.
+ *
+ * Each document contributes categorised phrases (title, author, ...). Phrases shared by several
+ * documents collapse into one entry whose weight is the sum of its documents' weights, and every
+ * phrase is reachable from the start of each of its words. Nodes cache the maximum weight below
+ * them, so top-K completion is a best-first walk that stops after K entries instead of visiting
+ * the whole subtree.
+ */
+public class CompletionTrie {
+    
+    private static final int MAX_WORD_STARTS = 8;
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+    
+    private final Node root = new Node("");
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final LongObjectHashMap<Entry[]> documentEntries = new LongObjectHashMap<>(1024);
+    private final LongIntHashMap documentWeights = new LongIntHashMap(1024);
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    public void put(long docId, String[] categories, String[] texts) {
+        lock.writeLock().lock();
+        try {
+            releaseDocument(docId);
+            long weight = 1L + documentWeights.get(docId, 0);
+            List<Entry> acquired = new ArrayList<>(texts.length);
+            for (int i = 0; i < texts.length; i++) {
+                Entry entry = acquire(categories[i], texts[i]);
+                if (entry != null) {
+                    entry.references++;
+                    entry.weight += weight;
+                    refresh(entry);
+                    acquired.add(entry);
+                }
+            }
+            documentEntries.put(docId, acquired.toArray(NO_ENTRIES));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(long docId) {
+        lock.writeLock().lock();
+        try {
+            releaseDocument(docId);
+            documentEntries.remove(docId);
+            documentWeights.remove(docId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void addWeight(long docId, int delta) {
+        lock.writeLock().lock();
+        try {
+            documentWeights.addTo(docId, delta);
+            Entry[] owned = documentEntries.get(docId);
+            if (owned != null) {
+                for (Entry entry : owned) {
+                    entry.weight += delta;
+                    refresh(entry);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            root.children = NO_CHILDREN;
+            root.entries = NO_ENTRIES;
+            root.maxWeight = 0;
+            entries.clear();
+            documentEntries.clear();
+            documentWeights.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public List<Completion> complete(String prefix, int limit) {
+        String key = String.join(" ", TextAnalyzer.tokenize(prefix));
+        if (key.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int matched = 0;
+            while (matched < key.length()) {
+                Node child = node.child(key.charAt(matched));
+                if (child == null) {
+                    return new ArrayList<>();
+                }
+                int common = commonPrefix(child.label, key, matched);
+                if (matched + common == key.length()) {
+                    node = child;
+                    break;
+                }
+                if (common < child.label.length()) {
+                    return new ArrayList<>();
+                }
+                node = child;
+                matched += common;
+            }
+            
+            List<Completion> completions = new ArrayList<>(limit);
+            Set<Entry> emitted = Collections.newSetFromMap(new IdentityHashMap<>());
+            PriorityQueue<Candidate> frontier = new PriorityQueue<>(Candidate.BEST_FIRST);
+            frontier.add(new Candidate(node, null, node.maxWeight));
+            while (!frontier.isEmpty() && completions.size() < limit) {
+                Candidate candidate = frontier.poll();
+                if (candidate.entry != null) {
+                    if (emitted.add(candidate.entry)) {
+                        completions.add(candidate.entry.toCompletion());
+                    }
+                    continue;
+                }
+                for (Entry entry : candidate.node.entries) {
+                    frontier.add(new Candidate(null, entry, entry.weight));
+                }
+                for (Node child : candidate.node.children) {
+                    frontier.add(new Candidate(child, null, child.maxWeight));
+                }
+            }
+            return completions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public Map<String, Object> getStatistics() {
+        lock.readLock().lock();
+        try {
+            long nodes = 0;
+            long labelChars = 0;
+            long entryReferences = 0;
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node node = stack.pop();
+                nodes++;
+                labelChars += node.label.length();
+                entryReferences += node.entries.length;
+                for (Node child : node.children) {
+                    stack.push(child);
+                }
+            }
+            long entryChars = 0;
+            for (Entry entry : entries.values()) {
+                entryChars += entry.text.length();
+            }
+            // Rough compressed-oops estimate: node/String/array headers plus 1-2 bytes per char
+            long estimatedBytes = nodes * 72 + labelChars * 2 + entryReferences * 4
+                    + entries.size() * 96L + entryChars * 2 + documentEntries.size() * 40L;
+            
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("entries", entries.size());
+            statistics.put("nodes", nodes);
+            statistics.put("estimatedBytes", estimatedBytes);
+            return statistics;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private Entry acquire(String category, String text) {
+        List<String> tokens = TextAnalyzer.tokenize(text);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        String id = category + '\u0000' + String.join(" ", tokens);
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            int starts = Math.min(tokens.size(), MAX_WORD_STARTS);
+            String[] keys = new String[starts];
+            for (int i = 0; i < starts; i++) {
+                keys[i] = String.join(" ", tokens.subList(i, tokens.size()));
+            }
+            entry = new Entry(id, category, text.trim(), keys);
+            entries.put(id, entry);
+            for (String key : entry.keys) {
+                insert(key, entry);
+            }
+        }
+        return entry;
+    }
+    
+    private void releaseDocument(long docId) {
+        Entry[] owned = documentEntries.get(docId);
+        if (owned == null) {
+            return;
+        }
+        long weight = 1L + documentWeights.get(docId, 0);
+        for (Entry entry : owned) {
+            entry.references--;
+            entry.weight -= weight;
+            if (entry.references <= 0) {
+                entries.remove(entry.id);
+                for (String key : entry.keys) {
+                    delete(key, entry);
+                }
+            } else {
+                refresh(entry);
+            }
+        }
+        documentEntries.put(docId, NO_ENTRIES);
+    }
+    
+    private void insert(String key, Entry entry) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int matched = 0;
+        while (matched < key.length()) {
+            Node child = node.child(key.charAt(matched));
+            if (child == null) {
+                Node leaf = new Node(key.substring(matched));
+                node.addChild(leaf);
+                node = leaf;
+                path.add(node);
+                break;
+            }
+            int common = commonPrefix(child.label, key, matched);
+            if (common < child.label.length()) {
+                // Split the edge so the shared part becomes its own node
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                node.replaceChild(child, middle);
+                middle.addChild(child);
+                middle.maxWeight = child.maxWeight;
+                child = middle;
+            }
+            node = child;
+            path.add(node);
+            matched += common;
+        }
+        node.addEntry(entry);
+        recompute(path);
+    }
+    
+    private void delete(String key, Entry entry) {
+        List<Node> path = pathTo(key);
+        if (path == null) {
+            return;
+        }
+        path.get(path.size() - 1).removeEntry(entry);
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node node = path.get(i);
+            Node parent = path.get(i - 1);
+            if (node.entries.length == 0 && node.children.length == 0) {
+                parent.removeChild(node);
+            } else if (node.entries.length == 0 && node.children.length == 1) {
+                // Re-compress: absorb the only child into this edge
+                Node child = node.children[0];
+                node.label = node.label + child.label;
+                node.children = child.children;
+                node.entries = child.entries;
+                node.maxWeight = child.maxWeight;
+            }
+        }
+        recompute(path);
+    }
+    
+    private void refresh(Entry entry) {
+        for (String key : entry.keys) {
+            List<Node> path = pathTo(key);
+            if (path != null) {
+                recompute(path);
+            }
+        }
+    }
+    
+    private List<Node> pathTo(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int matched = 0;
+        while (matched < key.length()) {
+            Node child = node.child(key.charAt(matched));
+            if (child == null || !key.startsWith(child.label, matched)) {
+                return null;
+            }
+            node = child;
+            path.add(node);
+            matched += child.label.length();
+        }
+        return path;
+    }
+    
+    private static void recompute(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node node = path.get(i);
+            long max = 0;
+            for (Entry entry : node.entries) {
+                max = Math.max(max, entry.weight);
+            }
+            for (Node child : node.children) {
+                max = Math.max(max, child.maxWeight);
+            }
+            node.maxWeight = max;
+        }
+    }
+    
+    private static int commonPrefix(String label, String key, int offset) {
+        int limit = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < limit && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+    
+    private static class Node {
+        String label;
+        Node[] children = NO_CHILDREN;
+        Entry[] entries = NO_ENTRIES;
+        long maxWeight;
+        
+        Node(String label) {
+            this.label = label;
+        }
+        
+        // Children are kept sorted by first character for binary search
+        Node child(char first) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char c = children[mid].label.charAt(0);
+                if (c < first) {
+                    low = mid + 1;
+                } else if (c > first) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+        
+        void addChild(Node child) {
+            char first = child.label.charAt(0);
+            int index = 0;
+            while (index < children.length && children[index].label.charAt(0) < first) {
+                index++;
+            }
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, index);
+            grown[index] = child;
+            System.arraycopy(children, index, grown, index + 1, children.length - index);
+            children = grown;
+        }
+        
+        void replaceChild(Node existing, Node replacement) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] == existing) {
+                    children[i] = replacement;
+                    return;
+                }
+            }
+        }
+        
+        void removeChild(Node child) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] == child) {
+                    Node[] shrunk = new Node[children.length - 1];
+                    System.arraycopy(children, 0, shrunk, 0, i);
+                    System.arraycopy(children, i + 1, shrunk, i, children.length - i - 1);
+                    children = shrunk;
+                    return;
+                }
+            }
+        }
+        
+        void addEntry(Entry entry) {
+            for (Entry existing : entries) {
+                if (existing == entry) {
+                    return;
+                }
+            }
+            entries = Arrays.copyOf(entries, entries.length + 1);
+            entries[entries.length - 1] = entry;
+        }
+        
+        void removeEntry(Entry entry) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] == entry) {
+                    Entry[] shrunk = new Entry[entries.length - 1];
+                    System.arraycopy(entries, 0, shrunk, 0, i);
+                    System.arraycopy(entries, i + 1, shrunk, i, entries.length - i - 1);
+                    entries = shrunk;
+                    return;
+                }
+            }
+        }
+    }
+    
+    private static class Entry {
+        final String id;
+        final String category;
+        final String text;
+        final String[] keys;
+        long weight;
+        int references;
+        
+        Entry(String id, String category, String text, String[] keys) {
+            this.id = id;
+            this.category = category;
+            this.text = text;
+            this.keys = keys;
+        }
+        
+        Completion toCompletion() {
+            return new Completion(text, category, weight);
+        }
+    }
+    
+    private static class Candidate {
+        // Highest weight first; on equal weight a finished entry beats a subtree still to expand
+        static final Comparator<Candidate> BEST_FIRST = Comparator.comparingLong((Candidate c) -> c.weight)
+                .reversed()
+                .thenComparingInt(c -> c.entry != null ? 0 : 1)
+                .thenComparingInt(c -> c.entry != null ? c.entry.text.length() : 0);
+        
+        final Node node;
+        final Entry entry;
+        final long weight;
+        
+        Candidate(Node node, Entry entry, long weight) {
+            this.node = node;
+            this.entry = entry;
+            this.weight = weight;
+        }
+    }
+    
+    public static class Completion {
+        private final String text;
+        private final String category;
+        private final long weight;
+        
+        Completion(String text, String category, long weight) {
+            this.text = text;
+            this.category = category;
+            this.weight = weight;
+        }
+        
+        public String getText() { return text; }
+        public String getCategory() { return category; }
+        public long getWeight() { return weight; }
+    }
+}
@@ -0,0 +1,270 @@
+package com.enicarthage.library.search;
+
+import com.enicarthage.library.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bitmap index for faceted filtering. Documents are mapped to dense ordinals (freed ordinals are
+ * reused) and every dimension value owns a bitmap over those ordinals, so a filter is a handful of
+ * word-wise ANDs/ORs and each facet count is an AND-popcount that allocates nothing.
+ *
+ * Counts for a dimension ignore that dimension's own selection (multi-select faceting), so the
+ * client can show how many results every alternative value would give.
+ */
+public class FacetIndex {
+    
+    private final List<String> dimensions;
+    private final Map<String, Map<String, long[]>> bitmaps = new HashMap<>();
+    
+    private final LongIntHashMap ordinals = new LongIntHashMap(1024);
+    private long[] ordinalToDoc = new long[1024];
+    private String[][] ordinalValues = new String[1024][];
+    private long[] live = new long[16];
+    private int nextOrdinal;
+    private final List<Integer> freeOrdinals = new ArrayList<>();
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    public FacetIndex(String... dimensions) {
+        this.dimensions = Arrays.asList(dimensions);
+        for (String dimension : dimensions) {
+            bitmaps.put(dimension, new TreeMap<>());
+        }
+    }
+    
+    public void put(long docId, String... values) {
+        if (values.length != dimensions.size()) {
+            throw new IllegalArgumentException("Expected one value per dimension " + dimensions);
+        }
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinals.get(docId, -1);
+            if (ordinal < 0) {
+                ordinal = allocate(docId);
+            } else if (Arrays.equals(ordinalValues[ordinal], values)) {
+                return;
+            } else {
+                clearValues(ordinal);
+            }
+            for (int d = 0; d < values.length; d++) {
+                long[] bitmap = bitmaps.get(dimensions.get(d)).computeIfAbsent(values[d], value -> new long[live.length]);
+                bitmap = ensureCapacity(dimensions.get(d), values[d], bitmap);
+                set(bitmap, ordinal);
+            }
+            ordinalValues[ordinal] = values.clone();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(long docId) {
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinals.get(docId, -1);
+            if (ordinal < 0) {
+                return;
+            }
+            clearValues(ordinal);
+            ordinalValues[ordinal] = null;
+            clear(live, ordinal);
+            ordinals.remove(docId);
+            freeOrdinals.add(ordinal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (Map<String, long[]> values : bitmaps.values()) {
+                values.clear();
+            }
+            ordinals.clear();
+            Arrays.fill(ordinalValues, null);
+            Arrays.fill(live, 0L);
+            freeOrdinals.clear();
+            nextOrdinal = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * @param selections dimension -> accepted values (OR within a dimension, AND across dimensions);
+     *                   dimensions that are absent or empty are unconstrained
+     */
+    public Result query(Map<String, ? extends Collection<String>> selections, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            int words = live.length;
+            Map<String, long[]> selected = new HashMap<>();
+            for (String dimension : dimensions) {
+                Collection<String> accepted = selections.get(dimension);
+                if (accepted == null || accepted.isEmpty()) {
+                    continue;
+                }
+                long[] union = new long[words];
+                for (String value : accepted) {
+                    long[] bitmap = bitmaps.get(dimension).get(value);
+                    if (bitmap != null) {
+                        for (int w = 0; w < Math.min(words, bitmap.length); w++) {
+                            union[w] |= bitmap[w];
+                        }
+                    }
+                }
+                selected.put(dimension, union);
+            }
+            
+            Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+            long[] scratch = new long[words];
+            for (String dimension : dimensions) {
+                // Filter by every other dimension, then count each value of this one
+                System.arraycopy(live, 0, scratch, 0, words);
+                for (Map.Entry<String, long[]> entry : selected.entrySet()) {
+                    if (!entry.getKey().equals(dimension)) {
+                        and(scratch, entry.getValue());
+                    }
+                }
+                Map<String, Integer> dimensionCounts = new LinkedHashMap<>();
+                for (Map.Entry<String, long[]> value : bitmaps.get(dimension).entrySet()) {
+                    int count = andCardinality(scratch, value.getValue());
+                    if (count > 0) {
+                        dimensionCounts.put(value.getKey(), count);
+                    }
+                }
+                counts.put(dimension, dimensionCounts);
+            }
+            
+            long[] matches = live.clone();
+            for (long[] union : selected.values()) {
+                and(matches, union);
+            }
+            int total = 0;
+            List<Long> page = new ArrayList<>(Math.max(0, limit));
+            for (int w = 0; w < words; w++) {
+                long word = matches[w];
+                while (word != 0) {
+                    int ordinal = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    if (total >= offset && page.size() < limit) {
+                        page.add(ordinalToDoc[ordinal]);
+                    }
+                    total++;
+                }
+            }
+            return new Result(page, total, counts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private int allocate(long docId) {
+        int ordinal = freeOrdinals.isEmpty() ? nextOrdinal++ : freeOrdinals.remove(freeOrdinals.size() - 1);
+        if (ordinal >= ordinalToDoc.length) {
+            int capacity = ordinalToDoc.length << 1;
+            ordinalToDoc = Arrays.copyOf(ordinalToDoc, capacity);
+            ordinalValues = Arrays.copyOf(ordinalValues, capacity);
+        }
+        if ((ordinal >>> 6) >= live.length) {
+            live = Arrays.copyOf(live, live.length << 1);
+        }
+        ordinalToDoc[ordinal] = docId;
+        ordinals.put(docId, ordinal);
+        set(live, ordinal);
+        return ordinal;
+    }
+    
+    private void clearValues(int ordinal) {
+        String[] previous = ordinalValues[ordinal];
+        if (previous == null) {
+            return;
+        }
+        for (int d = 0; d < previous.length; d++) {
+            Map<String, long[]> values = bitmaps.get(dimensions.get(d));
+            long[] bitmap = values.get(previous[d]);
+            if (bitmap != null) {
+                clear(bitmap, ordinal);
+                if (isEmpty(bitmap)) {
+                    values.remove(previous[d]);
+                }
+            }
+        }
+    }
+    
+    private long[] ensureCapacity(String dimension, String value, long[] bitmap) {
+        if (bitmap.length < live.length) {
+            bitmap = Arrays.copyOf(bitmap, live.length);
+            bitmaps.get(dimension).put(value, bitmap);
+        }
+        return bitmap;
+    }
+    
+    private static void set(long[] bitmap, int ordinal) {
+        bitmap[ordinal >>> 6] |= 1L << ordinal;
+    }
+    
+    private static void clear(long[] bitmap, int ordinal) {
+        if ((ordinal >>> 6) < bitmap.length) {
+            bitmap[ordinal >>> 6] &= ~(1L << ordinal);
+        }
+    }
+    
+    private static boolean isEmpty(long[] bitmap) {
+        for (long word : bitmap) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static void and(long[] target, long[] other) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] &= w < other.length ? other[w] : 0L;
+        }
+    }
+    
+    private static int andCardinality(long[] a, long[] b) {
+        int count = 0;
+        int words = Math.min(a.length, b.length);
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(a[w] & b[w]);
+        }
+        return count;
+    }
+    
+    public static class Result {
+        private final List<Long> docIds;
+        private final int totalMatches;
+        private final Map<String, Map<String, Integer>> facetCounts;
+        
+        Result(List<Long> docIds, int totalMatches, Map<String, Map<String, Integer>> facetCounts) {
+            this.docIds = docIds;
+            this.totalMatches = totalMatches;
+            this.facetCounts = facetCounts;
+        }
+        
+        public List<Long> getDocIds() { return docIds; }
+        public int getTotalMatches() { return totalMatches; }
+        public Map<String, Map<String, Integer>> getFacetCounts() { return facetCounts; }
+    }
+}
@@ -0,0 +1,307 @@
+package com.enicarthage.library.search;
+
+import com.enicarthage.library.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+
+/**
+ * Thread-safe in-memory inverted index with BM25 ranking. Documents are identified by
+ * their entity id and can be added, replaced and removed incrementally.
+ */
+public class InvertedIndex {
+    
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    
+    // term -> (docId -> weighted term frequency); sorted so the last query token can be prefix-expanded
+    private final NavigableMap<String, LongIntHashMap> postings = new TreeMap<>();
+    private final Map<Long, String[]> documentTerms = new HashMap<>();
+    private final LongIntHashMap documentLengths = new LongIntHashMap(1024);
+    private long totalLength;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    public void put(long docId, Document document) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(docId);
+            if (document.frequencies.isEmpty()) {
+                return;
+            }
+            String[] terms = document.frequencies.keySet().toArray(new String[0]);
+            for (Map.Entry<String, Integer> entry : document.frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), term -> new LongIntHashMap())
+                        .put(docId, entry.getValue());
+            }
+            documentTerms.put(docId, terms);
+            documentLengths.put(docId, document.length);
+            totalLength += document.length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(long docId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(docId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documentTerms.clear();
+            documentLengths.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentLengths.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Conjunctive (AND) BM25 search: every query term must match. When {@code prefixLast} is set
+     * the final term also matches any indexed term it is a prefix of, for search-as-you-type.
+     */
+    public SearchHits search(List<String> terms, boolean prefixLast, LongPredicate filter, int offset, int limit) {
+        if (terms.isEmpty() || limit <= 0) {
+            return SearchHits.EMPTY;
+        }
+        lock.readLock().lock();
+        try {
+            int documentCount = documentLengths.size();
+            if (documentCount == 0) {
+                return SearchHits.EMPTY;
+            }
+            double averageLength = (double) totalLength / documentCount;
+            
+            List<Clause> clauses = new ArrayList<>(terms.size());
+            for (int i = 0; i < terms.size(); i++) {
+                Clause clause = new Clause();
+                String term = terms.get(i);
+                if (prefixLast && i == terms.size() - 1) {
+                    for (LongIntHashMap list : mostFrequentCompletions(term)) {
+                        clause.add(list, idf(documentCount, list.size()));
+                    }
+                } else {
+                    LongIntHashMap list = postings.get(term);
+                    if (list != null) {
+                        clause.add(list, idf(documentCount, list.size()));
+                    }
+                }
+                if (clause.lists.isEmpty()) {
+                    return SearchHits.EMPTY;
+                }
+                clauses.add(clause);
+            }
+            // Drive the intersection from the most selective clause
+            clauses.sort(Comparator.comparingLong(clause -> clause.estimatedSize));
+            Clause driver = clauses.get(0);
+            
+            int keep = offset + limit;
+            PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(keep, 1024) + 1, Hit.WORST_FIRST);
+            LongIntHashMap visited = driver.lists.size() > 1 ? new LongIntHashMap() : null;
+            long[] matched = new long[1];
+            
+            for (LongIntHashMap list : driver.lists) {
+                list.forEach((docId, ignored) -> {
+                    if (visited != null) {
+                        if (visited.containsKey(docId)) {
+                            return;
+                        }
+                        visited.put(docId, 1);
+                    }
+                    if (filter != null && !filter.test(docId)) {
+                        return;
+                    }
+                    int length = documentLengths.get(docId, 0);
+                    double score = 0;
+                    for (Clause clause : clauses) {
+                        double clauseScore = clause.score(docId, length, averageLength);
+                        if (clauseScore == 0) {
+                            return;
+                        }
+                        score += clauseScore;
+                    }
+                    matched[0]++;
+                    top.add(new Hit(docId, score));
+                    if (top.size() > keep) {
+                        top.poll();
+                    }
+                });
+            }
+            return SearchHits.from(top, offset, matched[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // The expansions of a prefix with the most documents, so a cap never drops the common completions
+    private List<LongIntHashMap> mostFrequentCompletions(String prefix) {
+        PriorityQueue<LongIntHashMap> top = new PriorityQueue<>(MAX_PREFIX_EXPANSIONS + 1,
+                Comparator.comparingInt(LongIntHashMap::size));
+        for (LongIntHashMap list : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            top.add(list);
+            if (top.size() > MAX_PREFIX_EXPANSIONS) {
+                top.poll();
+            }
+        }
+        return new ArrayList<>(top);
+    }
+    
+    private void removeInternal(long docId) {
+        String[] terms = documentTerms.remove(docId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            LongIntHashMap list = postings.get(term);
+            if (list != null) {
+                list.remove(docId);
+                if (list.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        totalLength -= documentLengths.get(docId, 0);
+        documentLengths.remove(docId);
+    }
+    
+    private static double idf(int documentCount, int documentFrequency) {
+        return Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+    
+    private static double bm25(int frequency, int length, double averageLength) {
+        return frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+    
+    private static class Clause {
+        final List<LongIntHashMap> lists = new ArrayList<>(1);
+        final List<Double> idfs = new ArrayList<>(1);
+        long estimatedSize;
+        
+        void add(LongIntHashMap list, double idf) {
+            lists.add(list);
+            idfs.add(idf);
+            estimatedSize += list.size();
+        }
+        
+        double score(long docId, int length, double averageLength) {
+            double score = 0;
+            for (int i = 0; i < lists.size(); i++) {
+                int frequency = lists.get(i).get(docId, 0);
+                if (frequency > 0) {
+                    score += idfs.get(i) * bm25(frequency, length, averageLength);
+                }
+            }
+            return score;
+        }
+    }
+    
+    /**
+     * Weighted bag of terms for one document. Fields with a higher weight (e.g. the title)
+     * contribute proportionally more to term frequency and document length.
+     */
+    public static class Document {
+        private final Map<String, Integer> frequencies = new HashMap<>();
+        private int length;
+        
+        public Document field(String text, int weight) {
+            for (String token : TextAnalyzer.tokenize(text)) {
+                term(token, weight);
+            }
+            return this;
+        }
+        
+        public Document term(String term, int weight) {
+            if (term != null && !term.isEmpty()) {
+                frequencies.merge(term, weight, Integer::sum);
+                length += weight;
+            }
+            return this;
+        }
+    }
+    
+    public static class Hit {
+        static final Comparator<Hit> WORST_FIRST = Comparator.comparingDouble((Hit hit) -> hit.score)
+                .thenComparing(Comparator.comparingLong((Hit hit) -> hit.docId).reversed());
+        
+        private final long docId;
+        private final double score;
+        
+        Hit(long docId, double score) {
+            this.docId = docId;
+            this.score = score;
+        }
+        
+        public long getDocId() { return docId; }
+        public double getScore() { return score; }
+    }
+    
+    public static class SearchHits {
+        static final SearchHits EMPTY = new SearchHits(new ArrayList<>(), 0);
+        
+        private final List<Hit> hits;
+        private final long totalHits;
+        
+        SearchHits(List<Hit> hits, long totalHits) {
+            this.hits = hits;
+            this.totalHits = totalHits;
+        }
+        
+        static SearchHits from(PriorityQueue<Hit> top, int offset, long totalHits) {
+            List<Hit> ranked = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                ranked.add(top.poll());
+            }
+            // Heap drains worst-first; reverse to best-first and drop the skipped offset
+            List<Hit> page = new ArrayList<>(Math.max(0, ranked.size() - offset));
+            for (int i = ranked.size() - 1 - offset; i >= 0; i--) {
+                page.add(ranked.get(i));
+            }
+            return new SearchHits(page, totalHits);
+        }
+        
+        public List<Hit> getHits() { return hits; }
+        public long getTotalHits() { return totalHits; }
+        
+        public List<Long> getDocIds() {
+            List<Long> ids = new ArrayList<>(hits.size());
+            for (Hit hit : hits) {
+                ids.add(hit.docId);
+            }
+            return ids;
+        }
+    }
+}
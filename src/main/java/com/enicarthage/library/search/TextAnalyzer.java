@@ -0,0 +1,85 @@
+package com.enicarthage.library.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Shared normalisation for the in-memory indexes: case folding, accent folding
+ * (accented and unaccented spellings index identically) and alphanumeric tokenization.
+ */
+public final class TextAnalyzer {
+    
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    
+    private TextAnalyzer() {
+    }
+    
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+    
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i < folded.length(); i++) {
+            if (Character.isLetterOrDigit(folded.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(folded.substring(start));
+        }
+        return tokens;
+    }
+    
+    // ISBNs are typed with and without hyphens, so they are indexed as one compact token
+    public static String compactIsbn(String isbn) {
+        if (isbn == null) {
+            return "";
+        }
+        StringBuilder compact = new StringBuilder(isbn.length());
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                compact.append(Character.toLowerCase(c));
+            }
+        }
+        return compact.toString();
+    }
+    
+    public static boolean looksLikeIsbn(String text) {
+        if (text == null) {
+            return false;
+        }
+        String compact = compactIsbn(text);
+        if (compact.length() < 10 || compact.length() > 13) {
+            return false;
+        }
+        for (int i = 0; i < compact.length(); i++) {
+            char c = compact.charAt(i);
+            if (!Character.isDigit(c) && !(c == 'x' && i == compact.length() - 1)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,191 @@
+package com.enicarthage.library.search;
+
+import com.enicarthage.library.util.LongIntHashMap;
+import com.enicarthage.library.util.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe trigram index for typo-tolerant lookups. Every word is padded the same way as
+ * PostgreSQL's pg_trgm ("  ab", "abc", "bc ") and each trigram is packed into a long, so postings
+ * are primitive long-keyed sets with no boxing on the hot path.
+ */
+public class TrigramIndex {
+    
+    // trigram -> set of docIds (value unused)
+    private final LongObjectHashMap<LongIntHashMap> postings = new LongObjectHashMap<>(4096);
+    private final LongObjectHashMap<long[]> documentTrigrams = new LongObjectHashMap<>(1024);
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    public void put(long docId, String text) {
+        long[] trigrams = trigrams(text);
+        lock.writeLock().lock();
+        try {
+            removeInternal(docId);
+            if (trigrams.length == 0) {
+                return;
+            }
+            for (long trigram : trigrams) {
+                postings.computeIfAbsent(trigram, key -> new LongIntHashMap()).put(docId, 1);
+            }
+            documentTrigrams.put(docId, trigrams);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(long docId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(docId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documentTrigrams.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentTrigrams.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public int trigramCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Returns documents sharing at least {@code minSimilarity} of the query's trigrams, best first.
+     * Ties on that share are broken by Dice similarity, so closer and shorter values rank higher.
+     */
+    public List<Match> search(String query, double minSimilarity, int limit) {
+        long[] queryTrigrams = trigrams(query);
+        if (queryTrigrams.length == 0 || limit <= 0) {
+            return new ArrayList<>();
+        }
+        int minOverlap = Math.max(1, (int) Math.ceil(minSimilarity * queryTrigrams.length));
+        
+        lock.readLock().lock();
+        try {
+            LongIntHashMap[] lists = new LongIntHashMap[queryTrigrams.length];
+            for (int i = 0; i < queryTrigrams.length; i++) {
+                lists[i] = postings.get(queryTrigrams[i]);
+            }
+            Arrays.sort(lists, Comparator.comparingInt(list -> list == null ? 0 : list.size()));
+            
+            // Prefix filtering: a document missing from all of the rarest (n - minOverlap + 1) trigrams
+            // can never reach minOverlap, so only those lists may introduce new candidates.
+            int candidateLists = queryTrigrams.length - minOverlap + 1;
+            LongIntHashMap overlap = new LongIntHashMap();
+            for (int i = 0; i < lists.length; i++) {
+                LongIntHashMap list = lists[i];
+                if (list == null) {
+                    continue;
+                }
+                if (i < candidateLists) {
+                    list.forEach((docId, ignored) -> overlap.addTo(docId, 1));
+                } else {
+                    for (long docId : overlap.keys()) {
+                        if (list.containsKey(docId)) {
+                            overlap.addTo(docId, 1);
+                        }
+                    }
+                }
+            }
+            
+            PriorityQueue<Match> top = new PriorityQueue<>(limit + 1, Match.BEST_FIRST.reversed());
+            overlap.forEach((docId, shared) -> {
+                if (shared < minOverlap) {
+                    return;
+                }
+                long[] documentGrams = documentTrigrams.get(docId);
+                double similarity = (double) shared / queryTrigrams.length;
+                double dice = 2.0 * shared / (queryTrigrams.length + documentGrams.length);
+                top.add(new Match(docId, similarity, dice));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            });
+            
+            List<Match> matches = new ArrayList<>(top);
+            matches.sort(Match.BEST_FIRST);
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    static long[] trigrams(String text) {
+        LongIntHashMap distinct = new LongIntHashMap();
+        for (String token : TextAnalyzer.tokenize(text)) {
+            String padded = "  " + token + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                long trigram = ((long) padded.charAt(i) << 32)
+                        | ((long) padded.charAt(i + 1) << 16)
+                        | padded.charAt(i + 2);
+                distinct.put(trigram, 1);
+            }
+        }
+        return distinct.keys();
+    }
+    
+    private void removeInternal(long docId) {
+        long[] trigrams = documentTrigrams.remove(docId);
+        if (trigrams == null) {
+            return;
+        }
+        for (long trigram : trigrams) {
+            LongIntHashMap list = postings.get(trigram);
+            if (list != null) {
+                list.remove(docId);
+                if (list.isEmpty()) {
+                    postings.remove(trigram);
+                }
+            }
+        }
+    }
+    
+    public static class Match {
+        static final Comparator<Match> BEST_FIRST = Comparator.comparingDouble((Match match) -> match.similarity)
+                .thenComparingDouble(match -> match.dice)
+                .reversed()
+                .thenComparingLong(match -> match.docId);
+        
+        private final long docId;
+        private final double similarity;
+        private final double dice;
+        
+        Match(long docId, double similarity, double dice) {
+            this.docId = docId;
+            this.similarity = similarity;
+            this.dice = dice;
+        }
+        
+        public long getDocId() { return docId; }
+        public double getSimilarity() { return similarity; }
+        public double getDice() { return dice; }
+    }
+}
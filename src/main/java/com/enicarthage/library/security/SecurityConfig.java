@@ -45,6 +45,7 @@ public class SecurityConfig {
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/books/search").permitAll()
+                .requestMatchers("/api/books/suggest").permitAll()
                 .requestMatchers("/api/books/available").permitAll()
                 .requestMatchers("/api/events/upcoming").permitAll()
                 .requestMatchers("/api/events/public").permitAll()
@@ -0,0 +1,91 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.entity.Book;
+import com.enicarthage.library.util.BoundedCache;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Read-through cache for book detail lookups. Writers call {@link #invalidate(Long)}; inside a
+ * transaction the entry is evicted again once it completes, so a concurrent reader cannot re-cache the
+ * pre-commit row. Entries are detached copies holding only the book's own columns, and every caller
+ * gets its own copy, so no persistence context or lazy collection is shared between requests.
+ */
+@Component
+public class BookCache {
+    
+    @Value("${library.cache.books.maximum-size:1000}")
+    private int maximumSize;
+    
+    @Value("${library.cache.books.ttl-seconds:600}")
+    private long ttlSeconds;
+    
+    private BoundedCache<Long, Book> cache;
+    
+    @PostConstruct
+    public void init() {
+        cache = new BoundedCache<>(maximumSize, ttlSeconds * 1000L);
+    }
+    
+    public Book get(Long bookId, Function<Long, Book> loader) {
+        Book cached = cache.get(bookId, id -> {
+            Book loaded = loader.apply(id);
+            return loaded != null ? detachedCopy(loaded) : null;
+        });
+        return cached != null ? detachedCopy(cached) : null;
+    }
+    
+    public void invalidate(Long bookId) {
+        if (bookId == null) {
+            return;
+        }
+        cache.invalidate(bookId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(bookId);
+                }
+            });
+        }
+    }
+    
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+    
+    public Map<String, Object> getStatistics() {
+        return cache.getStatistics();
+    }
+    
+    // Collections (borrowings, reservations, reviews) are left null; they have their own endpoints
+    private static Book detachedCopy(Book book) {
+        Book copy = new Book();
+        copy.setId(book.getId());
+        copy.setTitle(book.getTitle());
+        copy.setAuthor(book.getAuthor());
+        copy.setIsbn(book.getIsbn());
+        copy.setPublisher(book.getPublisher());
+        copy.setPublicationYear(book.getPublicationYear());
+        copy.setCategory(book.getCategory());
+        copy.setStatus(book.getStatus());
+        copy.setDescription(book.getDescription());
+        copy.setCoverImageUrl(book.getCoverImageUrl());
+        copy.setTotalCopies(book.getTotalCopies());
+        copy.setAvailableCopies(book.getAvailableCopies());
+        copy.setShelfLocation(book.getShelfLocation());
+        copy.setLanguage(book.getLanguage());
+        copy.setPages(book.getPages());
+        copy.setPrice(book.getPrice());
+        copy.setCreatedAt(book.getCreatedAt());
+        copy.setUpdatedAt(book.getUpdatedAt());
+        copy.setVersion(book.getVersion());
+        return copy;
+    }
+}
@@ -0,0 +1,184 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.entity.Book;
+import com.enicarthage.library.entity.BookChange;
+import com.enicarthage.library.repository.BookChangeRepository;
+import com.enicarthage.library.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catalog change feed for client-side replicas. Every book write records an UPSERT or DELETE that
+ * replaces the book's earlier feed row, so a client asking for changes after position N gets at
+ * most one entry per book, reflecting its latest state.
+ *
+ * The changes of a transaction are written just before it commits, under the lock on the
+ * book_change_sequence row that hands out their positions. That lock is held until the commit, so
+ * a position only becomes visible after every lower one has: a client that has read up to N can
+ * never miss a change committed later at a position below N.
+ */
+@Service
+@Transactional
+public class BookChangeService {
+    
+    private static final int MAX_CHANGES = 1000;
+    
+    private static final String SEED_SEQUENCE_SQL = "INSERT IGNORE INTO book_change_sequence (id, last_position) "
+            + "SELECT 1, COALESCE(MAX(id), 0) FROM book_changes";
+    private static final String ALLOCATE_SQL = "UPDATE book_change_sequence "
+            + "SET last_position = LAST_INSERT_ID(last_position + ?) WHERE id = 1";
+    // One row per book: the unique book_id turns a repeat change into an update that moves the row forward
+    private static final String UPSERT_SQL = "INSERT INTO book_changes (id, book_id, type, changed_at) VALUES (?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE id = VALUES(id), type = VALUES(type), changed_at = VALUES(changed_at)";
+    
+    @Autowired
+    private BookChangeRepository bookChangeRepository;
+    
+    @Autowired
+    private BookRepository bookRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.update(SEED_SEQUENCE_SQL);
+    }
+    
+    public void recordUpsert(Long bookId) {
+        record(bookId, BookChange.ChangeType.UPSERT);
+    }
+    
+    public void recordDelete(Long bookId) {
+        record(bookId, BookChange.ChangeType.DELETE);
+    }
+    
+    // For books inserted in bulk outside JPA
+    public void recordInserts(List<Long> bookIds) {
+        Map<Long, BookChange.ChangeType> pending = pendingChanges();
+        for (Long bookId : bookIds) {
+            pending.put(bookId, BookChange.ChangeType.UPSERT);
+        }
+    }
+    
+    /**
+     * Position of the newest change. Every catalog write moves it, so it doubles as a version
+     * number for the catalog as a whole.
+     */
+    @Transactional(readOnly = true)
+    public long getLatestPosition() {
+        return bookChangeRepository.findLatestId();
+    }
+    
+    /**
+     * @param since feed position returned as nextSince by a previous call, or an ISO-8601
+     *              timestamp for the first sync after loading a snapshot; empty means the start
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getChangesSince(String since, int limit) {
+        long after = resolvePosition(since);
+        int pageSize = Math.max(1, Math.min(limit, MAX_CHANGES));
+        
+        List<BookChange> changes = bookChangeRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(pageSize + 1));
+        boolean hasMore = changes.size() > pageSize;
+        if (hasMore) {
+            changes = changes.subList(0, pageSize);
+        }
+        
+        List<Long> upsertIds = new ArrayList<>();
+        List<Long> deletes = new ArrayList<>();
+        for (BookChange change : changes) {
+            if (change.getType() == BookChange.ChangeType.DELETE) {
+                deletes.add(change.getBookId());
+            } else {
+                upsertIds.add(change.getBookId());
+            }
+        }
+        List<Book> upserts = upsertIds.isEmpty() ? new ArrayList<>() : bookRepository.findAllById(upsertIds);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("upserts", upserts);
+        response.put("deletes", deletes);
+        response.put("nextSince", changes.isEmpty() ? after : changes.get(changes.size() - 1).getId());
+        response.put("hasMore", hasMore);
+        return response;
+    }
+    
+    private void record(Long bookId, BookChange.ChangeType type) {
+        pendingChanges().put(bookId, type);
+    }
+    
+    // The current transaction's changes, latest type per book, written by write() before it commits
+    @SuppressWarnings("unchecked")
+    private Map<Long, BookChange.ChangeType> pendingChanges() {
+        Map<Long, BookChange.ChangeType> pending =
+                (Map<Long, BookChange.ChangeType>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<Long, BookChange.ChangeType> created = new LinkedHashMap<>();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    write(created);
+                }
+                
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(BookChangeService.this);
+                }
+            });
+            pending = created;
+        }
+        return pending;
+    }
+    
+    private void write(Map<Long, BookChange.ChangeType> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        // Taken last and held until commit, so concurrent writers queue here only for the commit itself
+        jdbcTemplate.update(ALLOCATE_SQL, pending.size());
+        long position = jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()", Long.class) - pending.size();
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(pending.size());
+        for (Map.Entry<Long, BookChange.ChangeType> change : pending.entrySet()) {
+            rows.add(new Object[]{++position, change.getKey(), change.getValue().name(), now});
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+    }
+    
+    private long resolvePosition(String since) {
+        if (since == null || since.isBlank()) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(since.trim());
+        } catch (NumberFormatException ignored) {
+            // not a feed position, try a timestamp
+        }
+        try {
+            LocalDateTime timestamp = LocalDateTime.parse(since.trim());
+            return bookChangeRepository.findFirstByChangedAtGreaterThanEqualOrderByIdAsc(timestamp)
+                    .map(change -> change.getId() - 1)
+                    .orElseGet(bookChangeRepository::findLatestId);
+        } catch (DateTimeParseException e) {
+            throw new RuntimeException("since must be a change position or an ISO-8601 timestamp");
+        }
+    }
+}
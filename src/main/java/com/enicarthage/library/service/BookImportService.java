@@ -0,0 +1,404 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.entity.Book;
+import com.enicarthage.library.repository.BookRepository;
+import com.enicarthage.library.search.TextAnalyzer;
+import com.enicarthage.library.util.CsvReader;
+import com.enicarthage.library.util.LongIntHashMap;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk catalog import. Rows are streamed from the request body, validated one at a time and
+ * written with JDBC batch inserts, so memory depends on the batch size rather than the file size.
+ * Duplicate ISBNs are checked per batch against the batch itself and the catalog, which already
+ * holds every earlier batch. Invalid rows are reported at the end and do not stop the import.
+ */
+@Service
+public class BookImportService {
+    
+    private static final String INSERT_SQL = "INSERT INTO books (title, author, isbn, publisher, publication_year, "
+            + "category, status, description, cover_image_url, total_copies, available_copies, shelf_location, "
+            + "language, pages, price, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Autowired
+    private BookRepository bookRepository;
+    
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+    
+    @Autowired
+    private BookChangeService bookChangeService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${library.import.batch-size:1000}")
+    private int batchSize;
+    
+    public Map<String, Object> importCsv(InputStream body) throws IOException {
+        ImportRun run = new ImportRun();
+        CsvReader csv = new CsvReader(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+        
+        List<String> header = csv.next();
+        if (header == null) {
+            return run.finish();
+        }
+        for (int i = 0; i < header.size(); i++) {
+            header.set(i, header.get(i).trim());
+        }
+        
+        List<String> fields;
+        while ((fields = csv.next()) != null) {
+            if (fields.size() != header.size()) {
+                run.rejectRow(csv.getRecordLine(), "Expected " + header.size() + " columns but found " + fields.size());
+                continue;
+            }
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                row.put(header.get(i), fields.get(i));
+            }
+            run.accept(csv.getRecordLine(), row);
+        }
+        return run.finish();
+    }
+    
+    public Map<String, Object> importNdjson(InputStream body) throws IOException {
+        ImportRun run = new ImportRun();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            Map<?, ?> parsed;
+            try {
+                parsed = objectMapper.readValue(line, Map.class);
+            } catch (JsonProcessingException e) {
+                run.rejectRow(lineNumber, "Malformed JSON: " + e.getOriginalMessage());
+                continue;
+            }
+            if (parsed == null) {
+                run.rejectRow(lineNumber, "Expected a JSON object but found null");
+                continue;
+            }
+            Map<String, Object> row = new HashMap<>();
+            for (Map.Entry<?, ?> entry : parsed.entrySet()) {
+                row.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            run.accept(lineNumber, row);
+        }
+        return run.finish();
+    }
+    
+    /**
+     * State of one import: the pending batch with its ISBNs, and the error report.
+     */
+    private class ImportRun {
+        private final long startedAt = System.currentTimeMillis();
+        private final LongIntHashMap batchIsbns = new LongIntHashMap(1024);
+        private final List<Book> batch = new ArrayList<>(batchSize);
+        private final List<Integer> batchLines = new ArrayList<>(batchSize);
+        private final List<Map<String, Object>> errors = new ArrayList<>();
+        private long lastIndexedId;
+        private int rows;
+        private int imported;
+        private int duplicates;
+        private int failed;
+        
+        ImportRun() {
+            Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM books", Long.class);
+            lastIndexedId = maxId != null ? maxId : 0L;
+        }
+        
+        void accept(int line, Map<String, Object> row) {
+            rows++;
+            Book book;
+            try {
+                book = toBook(row);
+            } catch (RuntimeException e) {
+                reject(line, e.getMessage());
+                return;
+            }
+            if (book.getIsbn() != null) {
+                long key = isbnKey(book.getIsbn());
+                if (batchIsbns.containsKey(key)) {
+                    duplicate(line, book);
+                    return;
+                }
+                batchIsbns.put(key, 1);
+            }
+            batch.add(book);
+            batchLines.add(line);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+        
+        // For rows that could not even be parsed into fields
+        void rejectRow(int line, String message) {
+            rows++;
+            reject(line, message);
+        }
+        
+        void reject(int line, String message) {
+            failed++;
+            report(line, message);
+        }
+        
+        private void duplicate(int line, Book book) {
+            duplicates++;
+            report(line, "Book with ISBN " + book.getIsbn() + " already exists");
+        }
+        
+        private void report(int line, String message) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                Map<String, Object> error = new LinkedHashMap<>();
+                error.put("line", line);
+                error.put("error", message);
+                errors.add(error);
+            }
+        }
+        
+        Map<String, Object> finish() {
+            flush();
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("rows", rows);
+            report.put("imported", imported);
+            report.put("duplicates", duplicates);
+            report.put("failed", failed);
+            report.put("errors", errors);
+            report.put("errorsTruncated", failed + duplicates > errors.size());
+            report.put("elapsedMillis", System.currentTimeMillis() - startedAt);
+            return report;
+        }
+        
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Book> books = new ArrayList<>(batch.size());
+            List<Integer> lines = new ArrayList<>(batch.size());
+            LongIntHashMap existing = existingIsbns();
+            for (int i = 0; i < batch.size(); i++) {
+                Book book = batch.get(i);
+                if (book.getIsbn() != null && existing.containsKey(isbnKey(book.getIsbn()))) {
+                    duplicate(batchLines.get(i), book);
+                } else {
+                    books.add(book);
+                    lines.add(batchLines.get(i));
+                }
+            }
+            
+            try {
+                // One transaction, so a failed batch leaves nothing behind to retry around
+                transactionTemplate.execute(status ->
+                        jdbcTemplate.batchUpdate(INSERT_SQL, books, books.size(), (ps, book) -> bind(ps, book)));
+                imported += books.size();
+            } catch (DataAccessException e) {
+                // Find the offending rows by inserting the batch one row at a time
+                for (int i = 0; i < books.size(); i++) {
+                    Book book = books.get(i);
+                    try {
+                        jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, book));
+                        imported++;
+                    } catch (DataAccessException rowFailure) {
+                        reject(lines.get(i), "Insert failed: " + rowFailure.getMostSpecificCause().getMessage());
+                    }
+                }
+            }
+            batch.clear();
+            batchLines.clear();
+            batchIsbns.clear();
+            indexNewBooks();
+        }
+        
+        // Catalog rows matching the batch's ISBNs as given or in compact form, as 64-bit hashes of the compact form
+        private LongIntHashMap existingIsbns() {
+            List<String> isbns = new ArrayList<>();
+            for (Book book : batch) {
+                if (book.getIsbn() != null) {
+                    isbns.add(book.getIsbn());
+                    isbns.add(TextAnalyzer.compactIsbn(book.getIsbn()));
+                }
+            }
+            LongIntHashMap existing = new LongIntHashMap();
+            if (isbns.isEmpty()) {
+                return existing;
+            }
+            String placeholders = String.join(", ", Collections.nCopies(isbns.size(), "?"));
+            jdbcTemplate.query("SELECT isbn FROM books WHERE isbn IN (" + placeholders + ")",
+                    rs -> {
+                        existing.put(isbnKey(rs.getString(1)), 1);
+                    }, isbns.toArray());
+            return existing;
+        }
+        
+        // The inserts bypass JPA, so pick the new rows up for the search index and change feed by id
+        private void indexNewBooks() {
+            List<Book> books = bookRepository.findTop500ByIdGreaterThanOrderByIdAsc(lastIndexedId);
+            while (!books.isEmpty()) {
+                List<Long> ids = new ArrayList<>(books.size());
+                for (Book book : books) {
+                    bookSearchIndex.index(book);
+                    ids.add(book.getId());
+                }
+                bookChangeService.recordInserts(ids);
+                lastIndexedId = books.get(books.size() - 1).getId();
+                books = bookRepository.findTop500ByIdGreaterThanOrderByIdAsc(lastIndexedId);
+            }
+        }
+    }
+    
+    private static void bind(PreparedStatement ps, Book book) throws SQLException {
+        ps.setString(1, book.getTitle());
+        ps.setString(2, book.getAuthor());
+        ps.setString(3, book.getIsbn());
+        ps.setString(4, book.getPublisher());
+        ps.setInt(5, book.getPublicationYear());
+        ps.setString(6, book.getCategory() != null ? book.getCategory().name() : null);
+        ps.setString(7, book.getStatus().name());
+        ps.setString(8, book.getDescription());
+        ps.setString(9, book.getCoverImageUrl());
+        ps.setInt(10, book.getTotalCopies());
+        ps.setInt(11, book.getAvailableCopies());
+        ps.setString(12, book.getShelfLocation());
+        ps.setString(13, book.getLanguage());
+        ps.setObject(14, book.getPages());
+        ps.setObject(15, book.getPrice());
+        ps.setTimestamp(16, Timestamp.valueOf(book.getCreatedAt()));
+        ps.setTimestamp(17, Timestamp.valueOf(book.getUpdatedAt()));
+    }
+    
+    private Book toBook(Map<String, Object> row) {
+        Book book = new Book();
+        book.setTitle(requiredText(row, "title", 200));
+        book.setAuthor(requiredText(row, "author", 100));
+        book.setIsbn(optionalText(row, "isbn", 100));
+        book.setPublisher(requiredText(row, "publisher", 50));
+        book.setPublicationYear(positiveInteger(row, "publicationYear", true));
+        book.setDescription(optionalText(row, "description", 1000));
+        book.setCoverImageUrl(optionalText(row, "coverImageUrl", 200));
+        book.setShelfLocation(optionalText(row, "shelfLocation", 255));
+        book.setLanguage(optionalText(row, "language", 255));
+        book.setPages(positiveInteger(row, "pages", false));
+        
+        String category = optionalText(row, "category", 50);
+        if (category != null) {
+            try {
+                book.setCategory(Book.BookCategory.valueOf(category.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Unknown category: " + category);
+            }
+        }
+        
+        Integer totalCopies = positiveInteger(row, "totalCopies", true);
+        Integer availableCopies = row.get("availableCopies") == null || text(row, "availableCopies").isEmpty()
+                ? totalCopies : integer(row, "availableCopies");
+        if (availableCopies < 0 || availableCopies > totalCopies) {
+            throw new RuntimeException("availableCopies must be between 0 and totalCopies");
+        }
+        book.setTotalCopies(totalCopies);
+        book.setAvailableCopies(availableCopies);
+        
+        String price = optionalText(row, "price", 50);
+        if (price != null) {
+            try {
+                book.setPrice(Double.valueOf(price));
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("price is not a number: " + price);
+            }
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        book.setStatus(Book.BookStatus.AVAILABLE);
+        book.setCreatedAt(now);
+        book.setUpdatedAt(now);
+        return book;
+    }
+    
+    private static String text(Map<String, Object> row, String field) {
+        Object value = row.get(field);
+        return value == null ? "" : String.valueOf(value).trim();
+    }
+    
+    private static String requiredText(Map<String, Object> row, String field, int maxLength) {
+        String value = optionalText(row, field, maxLength);
+        if (value == null) {
+            throw new RuntimeException(field + " is required");
+        }
+        return value;
+    }
+    
+    private static String optionalText(Map<String, Object> row, String field, int maxLength) {
+        String value = text(row, field);
+        if (value.length() > maxLength) {
+            throw new RuntimeException(field + " must be at most " + maxLength + " characters");
+        }
+        return value.isEmpty() ? null : value;
+    }
+    
+    private static Integer positiveInteger(Map<String, Object> row, String field, boolean required) {
+        if (text(row, field).isEmpty()) {
+            if (required) {
+                throw new RuntimeException(field + " is required");
+            }
+            return null;
+        }
+        Integer value = integer(row, field);
+        if (value <= 0) {
+            throw new RuntimeException(field + " must be positive");
+        }
+        return value;
+    }
+    
+    private static Integer integer(Map<String, Object> row, String field) {
+        try {
+            return Integer.valueOf(text(row, field));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException(field + " is not a whole number: " + text(row, field));
+        }
+    }
+    
+    private static long isbnKey(String isbn) {
+        String compact = TextAnalyzer.compactIsbn(isbn);
+        long hash = 1125899906842597L;
+        for (int i = 0; i < compact.length(); i++) {
+            hash = 31 * hash + compact.charAt(i);
+        }
+        return hash == Long.MIN_VALUE ? 0L : hash;
+    }
+}
@@ -6,13 +6,18 @@ import com.enicarthage.library.entity.User;
 import com.enicarthage.library.repository.BookRepository;
 import com.enicarthage.library.repository.BookReviewRepository;
 import com.enicarthage.library.repository.UserRepository;
+import com.enicarthage.library.search.InvertedIndex;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +36,33 @@ public class BookReviewService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private RatingSummaryCache ratingSummaryCache;
+    
+    @Autowired
+    private ReviewStatsCache reviewStatsCache;
+    
+    @Autowired
+    private ReviewSearchIndex reviewSearchIndex;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildSearchIndex() {
+        reviewSearchIndex.clear();
+        
+        // Same batched walk as the catalog index, so startup holds one batch of reviews at a time
+        long lastId = 0L;
+        List<BookReview> batch = bookReviewRepository.findTop500ByIdGreaterThanOrderByIdAsc(lastId);
+        while (!batch.isEmpty()) {
+            for (BookReview review : batch) {
+                reviewSearchIndex.index(review);
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+            batch = bookReviewRepository.findTop500ByIdGreaterThanOrderByIdAsc(lastId);
+        }
+        System.out.println("Review search index built: " + reviewSearchIndex.size() + " reviews, "
+                + reviewSearchIndex.termCount() + " terms");
+    }
+    
     public BookReview createReview(BookReview review) {
         // Check if user has already reviewed this book
         List<BookReview> existingReviews = bookReviewRepository.findByUserAndBook(
@@ -54,15 +86,23 @@ public class BookReviewService {
             review.setIsVerified(false);
         }
         
-        return bookReviewRepository.save(review);
+        BookReview savedReview = bookReviewRepository.save(review);
+        ratingSummaryCache.recordChange(review.getBook().getId(), null, savedReview.getRating());
+        reviewStatsCache.invalidate();
+        reviewSearchIndex.recordChange(savedReview, false);
+        return savedReview;
     }
     
     public BookReview updateReview(Long id, BookReview reviewDetails) {
         BookReview review = bookReviewRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Review not found"));
         
+        Integer previousRating = review.getRating();
         review.setReview(reviewDetails.getReview());
         review.setRating(reviewDetails.getRating());
+        ratingSummaryCache.recordChange(review.getBook().getId(), previousRating, review.getRating());
+        reviewStatsCache.invalidate();
+        reviewSearchIndex.recordChange(review, false);
         
         return bookReviewRepository.save(review);
     }
@@ -71,6 +111,9 @@ public class BookReviewService {
         BookReview review = bookReviewRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Review not found"));
         bookReviewRepository.delete(review);
+        ratingSummaryCache.recordChange(review.getBook().getId(), review.getRating(), null);
+        reviewStatsCache.invalidate();
+        reviewSearchIndex.recordChange(review, true);
     }
     
     public List<BookReview> getAllReviews() {
@@ -123,77 +166,87 @@ public class BookReviewService {
         return bookReviewRepository.findByBookAndRating(book, rating);
     }
     
+    public Page<BookReview> searchReviews(String query, Integer minRating, Integer maxRating, Boolean verified,
+                                          Pageable pageable) {
+        InvertedIndex.SearchHits hits = reviewSearchIndex.search(
+                query, minRating, maxRating, verified, (int) pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(loadInRankOrder(hits.getDocIds()), pageable, hits.getTotalHits());
+    }
+    
     public BookReview verifyReview(Long id, Boolean isVerified) {
         BookReview review = bookReviewRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Review not found"));
         review.setIsVerified(isVerified);
+        reviewStatsCache.invalidate();
+        reviewSearchIndex.recordChange(review, false);
         return bookReviewRepository.save(review);
     }
     
     public Map<String, Object> getBookAverageRating(Long bookId) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new RuntimeException("Book not found"));
+        if (!bookRepository.existsById(bookId)) {
+            throw new RuntimeException("Book not found");
+        }
         
-        List<BookReview> reviews = bookReviewRepository.findByBook(book);
+        // Maintained per book, so this does not depend on how many reviews there are
+        RatingSummaryCache.Summary summary = ratingSummaryCache.get(bookId);
         
         Map<String, Object> ratingInfo = new HashMap<>();
         
-        if (reviews.isEmpty()) {
+        if (summary.getCount() == 0) {
             ratingInfo.put("averageRating", 0.0);
             ratingInfo.put("totalReviews", 0);
             ratingInfo.put("ratingDistribution", new HashMap<>());
             return ratingInfo;
         }
         
-        // Calculate average rating
-        double totalRating = reviews.stream()
-                .mapToInt(BookReview::getRating)
-                .sum();
-        double averageRating = totalRating / reviews.size();
-        
-        // Calculate rating distribution
         Map<Integer, Long> ratingDistribution = new HashMap<>();
-        for (int i = 1; i <= 5; i++) {
-            long count = reviews.stream()
-                    .mapToInt(BookReview::getRating)
-                    .filter(rating -> rating == i)
-                    .count();
-            ratingDistribution.put(i, count);
+        for (int i = 1; i <= RatingSummaryCache.MAX_RATING; i++) {
+            ratingDistribution.put(i, summary.getRatingCount(i));
         }
         
-        ratingInfo.put("averageRating", Math.round(averageRating * 10.0) / 10.0);
-        ratingInfo.put("totalReviews", reviews.size());
+        ratingInfo.put("averageRating", Math.round(summary.getAverage() * 10.0) / 10.0);
+        ratingInfo.put("totalReviews", summary.getCount());
         ratingInfo.put("ratingDistribution", ratingDistribution);
         
         return ratingInfo;
     }
     
     public Map<String, Object> getReviewStatistics() {
+        // One grouped query, shared until a review changes
+        return new HashMap<>(reviewStatsCache.get());
+    }
+    
+    public Map<String, Object> getRatingSummaryStatistics() {
+        return ratingSummaryCache.getStatistics();
+    }
+    
+    public Map<String, Object> getReviewSearchIndexStatistics() {
         Map<String, Object> statistics = new HashMap<>();
-        
-        statistics.put("totalReviews", bookReviewRepository.count());
-        statistics.put("verifiedReviews", bookReviewRepository.countByIsVerified(true));
-        statistics.put("unverifiedReviews", bookReviewRepository.countByIsVerified(false));
-        
-        // Get reviews by rating
-        Map<Integer, Long> reviewsByRating = new HashMap<>();
-        for (int i = 1; i <= 5; i++) {
-            reviewsByRating.put(i, bookReviewRepository.countByRating(i));
+        statistics.put("indexedReviews", reviewSearchIndex.size());
+        statistics.put("distinctTerms", reviewSearchIndex.termCount());
+        return statistics;
+    }
+    
+    private List<BookReview> loadInRankOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
         }
-        statistics.put("reviewsByRating", reviewsByRating);
-        
-        // Calculate average rating across all reviews
-        List<BookReview> allReviews = bookReviewRepository.findAll();
-        if (!allReviews.isEmpty()) {
-            double totalRating = allReviews.stream()
-                    .mapToInt(BookReview::getRating)
-                    .sum();
-            double averageRating = totalRating / allReviews.size();
-            statistics.put("overallAverageRating", Math.round(averageRating * 10.0) / 10.0);
-        } else {
-            statistics.put("overallAverageRating", 0.0);
+        Map<Long, BookReview> reviewsById = new HashMap<>();
+        for (BookReview review : bookReviewRepository.findAllById(ids)) {
+            reviewsById.put(review.getId(), review);
         }
-        
-        return statistics;
+        List<BookReview> reviews = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            BookReview review = reviewsById.get(id);
+            // Missing if deleted after the search ran; the index drops it once that delete commits
+            if (review != null) {
+                reviews.add(review);
+            }
+        }
+        return reviews;
+    }
+    
+    public Map<String, Object> getReviewStatsCacheStatistics() {
+        return reviewStatsCache.getStatistics();
     }
 }
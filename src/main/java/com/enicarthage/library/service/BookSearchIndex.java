@@ -0,0 +1,188 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.entity.Book;
+import com.enicarthage.library.search.CompletionTrie;
+import com.enicarthage.library.search.FacetIndex;
+import com.enicarthage.library.search.InvertedIndex;
+import com.enicarthage.library.search.TextAnalyzer;
+import com.enicarthage.library.search.TrigramIndex;
+import com.enicarthage.library.util.LatencyRecorder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class BookSearchIndex {
+    
+    private static final int TITLE_WEIGHT = 3;
+    private static final int AUTHOR_WEIGHT = 2;
+    private static final int ISBN_WEIGHT = 1;
+    private static final double MIN_FUZZY_SIMILARITY = 0.5;
+    private static final String[] SUGGESTION_CATEGORIES = {"TITLE", "AUTHOR", "PUBLISHER"};
+    
+    public static final String FACET_CATEGORY = "category";
+    public static final String FACET_LANGUAGE = "language";
+    public static final String FACET_DECADE = "decade";
+    public static final String FACET_AVAILABILITY = "availability";
+    
+    private final InvertedIndex index = new InvertedIndex();
+    private final TrigramIndex titleTrigrams = new TrigramIndex();
+    private final TrigramIndex authorTrigrams = new TrigramIndex();
+    private final CompletionTrie completions = new CompletionTrie();
+    private final LatencyRecorder suggestLatency = new LatencyRecorder();
+    private final FacetIndex facets = new FacetIndex(FACET_CATEGORY, FACET_LANGUAGE, FACET_DECADE, FACET_AVAILABILITY);
+    
+    // Applied once the transaction commits, with the values read now, so a rollback never leaves
+    // unsaved titles or facets searchable
+    public void index(Book book) {
+        if (book.getId() == null) {
+            return;
+        }
+        Long bookId = book.getId();
+        String title = book.getTitle();
+        String author = book.getAuthor();
+        String[] suggestions = {title, author, book.getPublisher()};
+        InvertedIndex.Document document = new InvertedIndex.Document()
+                .field(title, TITLE_WEIGHT)
+                .field(author, AUTHOR_WEIGHT)
+                .term(TextAnalyzer.compactIsbn(book.getIsbn()), ISBN_WEIGHT);
+        Runnable facetUpdate = putFacets(book);
+        afterCommit(() -> {
+            index.put(bookId, document);
+            titleTrigrams.put(bookId, title);
+            authorTrigrams.put(bookId, author);
+            completions.put(bookId, SUGGESTION_CATEGORIES, suggestions);
+            facetUpdate.run();
+        });
+    }
+    
+    // Cheap path for changes that only touch faceted fields (availability after borrow/return); applied
+    // once the transaction commits so a rollback never shows availability that was not saved
+    public void refreshFacets(Book book) {
+        if (book.getId() == null) {
+            return;
+        }
+        afterCommit(putFacets(book));
+    }
+    
+    // Reads the book now, so the values applied later are the ones this transaction wrote
+    private Runnable putFacets(Book book) {
+        Long bookId = book.getId();
+        String category = book.getCategory() != null ? book.getCategory().name() : "UNCATEGORIZED";
+        String language = normalizeLanguage(book.getLanguage());
+        String decade = book.getPublicationYear() != null ? (book.getPublicationYear() / 10 * 10) + "s" : "unknown";
+        String availability = book.getAvailableCopies() != null && book.getAvailableCopies() > 0
+                ? "AVAILABLE" : "UNAVAILABLE";
+        return () -> facets.put(bookId, category, language, decade, availability);
+    }
+    
+    public void remove(Long bookId) {
+        afterCommit(() -> {
+            index.remove(bookId);
+            titleTrigrams.remove(bookId);
+            authorTrigrams.remove(bookId);
+            completions.remove(bookId);
+            facets.remove(bookId);
+        });
+    }
+    
+    public void clear() {
+        index.clear();
+        titleTrigrams.clear();
+        authorTrigrams.clear();
+        completions.clear();
+        facets.clear();
+    }
+    
+    public InvertedIndex.SearchHits search(String query, int offset, int limit) {
+        List<String> terms = TextAnalyzer.looksLikeIsbn(query)
+                ? Collections.singletonList(TextAnalyzer.compactIsbn(query))
+                : TextAnalyzer.tokenize(query);
+        // The last term is prefix-matched so partially typed words still hit
+        return index.search(terms, true, null, offset, limit);
+    }
+    
+    public List<Long> fuzzyTitle(String title, int limit) {
+        return toIds(titleTrigrams.search(title, MIN_FUZZY_SIMILARITY, limit));
+    }
+    
+    public List<Long> fuzzyAuthor(String author, int limit) {
+        return toIds(authorTrigrams.search(author, MIN_FUZZY_SIMILARITY, limit));
+    }
+    
+    public FacetIndex.Result facet(Map<String, ? extends Collection<String>> selections, int offset, int limit) {
+        Map<String, Collection<String>> normalized = new HashMap<>(selections);
+        Collection<String> languages = selections.get(FACET_LANGUAGE);
+        if (languages != null) {
+            List<String> folded = new ArrayList<>(languages.size());
+            for (String language : languages) {
+                folded.add(normalizeLanguage(language));
+            }
+            normalized.put(FACET_LANGUAGE, folded);
+        }
+        return facets.query(normalized, offset, limit);
+    }
+    
+    public List<CompletionTrie.Completion> suggest(String prefix, int limit) {
+        long start = System.nanoTime();
+        List<CompletionTrie.Completion> suggestions = completions.complete(prefix, limit);
+        suggestLatency.record(System.nanoTime() - start);
+        return suggestions;
+    }
+    
+    // Suggestions are weighted by how often the book has been borrowed; a rolled-back borrow does not count
+    public void recordBorrows(Long bookId, int borrows) {
+        afterCommit(() -> completions.addWeight(bookId, borrows));
+    }
+    
+    public Map<String, Object> getSuggestionStatistics() {
+        Map<String, Object> statistics = completions.getStatistics();
+        statistics.put("latency", suggestLatency.snapshot());
+        return statistics;
+    }
+    
+    public int size() {
+        return index.size();
+    }
+    
+    public int termCount() {
+        return index.termCount();
+    }
+    
+    public int trigramCount() {
+        return titleTrigrams.trigramCount() + authorTrigrams.trigramCount();
+    }
+    
+    private String normalizeLanguage(String language) {
+        String folded = TextAnalyzer.fold(language).trim();
+        return folded.isEmpty() ? "unknown" : folded;
+    }
+    
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+    
+    private List<Long> toIds(List<TrigramIndex.Match> matches) {
+        List<Long> ids = new ArrayList<>(matches.size());
+        for (TrigramIndex.Match match : matches) {
+            ids.add(match.getDocId());
+        }
+        return ids;
+    }
+}
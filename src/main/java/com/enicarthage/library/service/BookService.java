@@ -2,14 +2,33 @@ package com.enicarthage.library.service;
 
 import com.enicarthage.library.entity.Book;
 import com.enicarthage.library.repository.BookRepository;
+import com.enicarthage.library.repository.BookReviewRepository;
+import com.enicarthage.library.repository.BorrowingArchiveRepository;
+import com.enicarthage.library.repository.BorrowingRepository;
+import com.enicarthage.library.search.CompletionTrie;
+import com.enicarthage.library.search.FacetIndex;
+import com.enicarthage.library.search.InvertedIndex;
+import com.enicarthage.library.util.KeysetCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 @Service
 public class BookService {
@@ -17,6 +36,71 @@ public class BookService {
     @Autowired
     private BookRepository bookRepository;
     
+    @Autowired
+    private BorrowingRepository borrowingRepository;
+    
+    @Autowired
+    private BorrowingArchiveRepository borrowingArchiveRepository;
+    
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+    
+    @Autowired
+    private BookCache bookCache;
+    
+    @Autowired
+    private BookChangeService bookChangeService;
+    
+    @Autowired
+    private BookLockManager bookLockManager;
+    
+    @Autowired
+    private ReviewStatsCache reviewStatsCache;
+    
+    @Autowired
+    private BookReviewRepository bookReviewRepository;
+    
+    @Autowired
+    private ReviewSearchIndex reviewSearchIndex;
+    
+    private static final int FUZZY_MATCH_LIMIT = 50;
+    private static final int MAX_SUGGESTIONS = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    
+    // Sort keys backed by a (key, id) index on books, with how to read them back from a cursor
+    private static final Map<String, Function<String, Object>> SORT_KEYS = Map.of(
+            "title", value -> value,
+            "author", value -> value,
+            "publicationYear", Integer::valueOf,
+            "createdAt", LocalDateTime::parse,
+            "id", Long::valueOf);
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildSearchIndex() {
+        bookSearchIndex.clear();
+        
+        // Walk the catalog in id order so startup never holds more than one batch of entities
+        long lastId = 0L;
+        List<Book> batch = bookRepository.findTop500ByIdGreaterThanOrderByIdAsc(lastId);
+        while (!batch.isEmpty()) {
+            for (Book book : batch) {
+                bookSearchIndex.index(book);
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+            batch = bookRepository.findTop500ByIdGreaterThanOrderByIdAsc(lastId);
+        }
+        
+        // Popularity counts every loan, including the closed ones moved to the archive
+        for (Object[] row : borrowingRepository.countBorrowingsPerBook()) {
+            bookSearchIndex.recordBorrows((Long) row[0], ((Long) row[1]).intValue());
+        }
+        for (Object[] row : borrowingArchiveRepository.countBorrowingsPerBook()) {
+            bookSearchIndex.recordBorrows((Long) row[0], ((Long) row[1]).intValue());
+        }
+    }
+    
+    // Transactional like the other catalog writes, so its change feed and index updates are tied to the commit
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public Book createBook(Book book) {
         if (book.getIsbn() != null && !book.getIsbn().isEmpty()) {
             List<Book> existingBooks = bookRepository.findByIsbn(book.getIsbn());
@@ -29,10 +113,15 @@ public class BookService {
         book.setUpdatedAt(LocalDateTime.now());
         book.setStatus(Book.BookStatus.AVAILABLE);
         
-        return bookRepository.save(book);
+        Book savedBook = bookRepository.save(book);
+        bookChangeService.recordUpsert(savedBook.getId());
+        bookSearchIndex.index(savedBook);
+        return savedBook;
     }
     
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public Book updateBook(Long id, Book bookDetails) {
+        bookLockManager.lock(id);
         Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Book not found"));
         
@@ -60,13 +149,26 @@ public class BookService {
         book.setPrice(bookDetails.getPrice());
         book.setUpdatedAt(LocalDateTime.now());
         
-        return bookRepository.save(book);
+        Book savedBook = bookRepository.save(book);
+        bookCache.invalidate(id);
+        bookChangeService.recordUpsert(id);
+        bookSearchIndex.index(savedBook);
+        return savedBook;
     }
     
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public void deleteBook(Long id) {
+        bookLockManager.lock(id);
         Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Book not found"));
+        // The book's reviews are deleted with it
+        List<Long> reviewIds = bookReviewRepository.findIdsByBookId(id);
         bookRepository.delete(book);
+        bookCache.invalidate(id);
+        bookChangeService.recordDelete(id);
+        bookSearchIndex.remove(id);
+        reviewSearchIndex.recordRemovals(reviewIds);
+        reviewStatsCache.invalidate();
     }
     
     public List<Book> getAllBooks() {
@@ -77,16 +179,85 @@ public class BookService {
         return bookRepository.findAll(pageable);
     }
     
+    public Map<String, Object> getBooks(String cursor, int size, String sortBy, String sortDir) {
+        if (!SORT_KEYS.containsKey(sortBy)) {
+            throw new RuntimeException("Unsupported sort field: " + sortBy + ". Allowed: " + SORT_KEYS.keySet());
+        }
+        Sort.Direction direction = sortDir.equalsIgnoreCase("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
+        ScrollPosition position = KeysetCursor.position(cursor, sortBy, direction, SORT_KEYS);
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        
+        return KeysetCursor.slice(
+                bookRepository.findAllBy(position, KeysetCursor.sort(sortBy, direction), Limit.of(limit)),
+                sortBy, direction);
+    }
+    
     public Optional<Book> getBookById(Long id) {
-        return bookRepository.findById(id);
+        return Optional.ofNullable(bookCache.get(id, bookId -> bookRepository.findById(bookId).orElse(null)));
     }
     
     public List<Book> searchBooks(String searchTerm) {
-        return bookRepository.findBySearchTerm(searchTerm);
+        // Unpaged callers get the best matches only; a one-letter query would otherwise rank the whole catalog
+        InvertedIndex.SearchHits hits = bookSearchIndex.search(searchTerm, 0, MAX_PAGE_SIZE);
+        return loadInRankOrder(hits.getDocIds());
     }
     
     public Page<Book> searchBooks(String searchTerm, Pageable pageable) {
-        return bookRepository.findBySearchTerm(searchTerm, pageable);
+        InvertedIndex.SearchHits hits = bookSearchIndex.search(
+                searchTerm, (int) pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(loadInRankOrder(hits.getDocIds()), pageable, hits.getTotalHits());
+    }
+    
+    public Map<String, Object> facetedSearch(Map<String, List<String>> selections, Pageable pageable) {
+        FacetIndex.Result result = bookSearchIndex.facet(selections, (int) pageable.getOffset(), pageable.getPageSize());
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("books", new PageImpl<>(loadInRankOrder(result.getDocIds()), pageable, result.getTotalMatches()));
+        response.put("facets", result.getFacetCounts());
+        return response;
+    }
+    
+    public List<CompletionTrie.Completion> suggest(String prefix, int limit) {
+        return bookSearchIndex.suggest(prefix, Math.min(limit, MAX_SUGGESTIONS));
+    }
+    
+    public Map<String, Object> getSearchIndexStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("indexedBooks", bookSearchIndex.size());
+        statistics.put("distinctTerms", bookSearchIndex.termCount());
+        statistics.put("distinctTrigrams", bookSearchIndex.trigramCount());
+        statistics.put("suggestions", bookSearchIndex.getSuggestionStatistics());
+        return statistics;
+    }
+    
+    public long getCatalogVersion() {
+        return bookChangeService.getLatestPosition();
+    }
+    
+    public Map<String, Object> getChangesSince(String since, int limit) {
+        return bookChangeService.getChangesSince(since, limit);
+    }
+    
+    public Map<String, Object> getCacheStatistics() {
+        return bookCache.getStatistics();
+    }
+    
+    private List<Book> loadInRankOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Book> booksById = new HashMap<>();
+        for (Book book : bookRepository.findAllById(ids)) {
+            booksById.put(book.getId(), book);
+        }
+        List<Book> books = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Book book = booksById.get(id);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
     }
     
     public List<Book> getBooksByCategory(Book.BookCategory category) {
@@ -97,12 +268,13 @@ public class BookService {
         return bookRepository.findAvailableBooks();
     }
     
+    // Typo-tolerant: ranked by trigram similarity instead of exact substring matches
     public List<Book> getBooksByAuthor(String author) {
-        return bookRepository.findByAuthorContainingIgnoreCase(author);
+        return loadInRankOrder(bookSearchIndex.fuzzyAuthor(author, FUZZY_MATCH_LIMIT));
     }
     
     public List<Book> getBooksByTitle(String title) {
-        return bookRepository.findByTitleContainingIgnoreCase(title);
+        return loadInRankOrder(bookSearchIndex.fuzzyTitle(title, FUZZY_MATCH_LIMIT));
     }
     
     public List<Book> getBooksByPublicationYear(Integer year) {
@@ -113,19 +285,30 @@ public class BookService {
         return bookRepository.findByLanguage(language);
     }
     
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public Book updateBookStatus(Long id, Book.BookStatus status) {
+        bookLockManager.lock(id);
         Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Book not found"));
         book.setStatus(status);
         book.setUpdatedAt(LocalDateTime.now());
-        return bookRepository.save(book);
+        Book savedBook = bookRepository.save(book);
+        bookCache.invalidate(id);
+        bookChangeService.recordUpsert(id);
+        return savedBook;
     }
     
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public Book updateAvailableCopies(Long id, Integer availableCopies) {
+        bookLockManager.lock(id);
         Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Book not found"));
         book.setAvailableCopies(availableCopies);
         book.setUpdatedAt(LocalDateTime.now());
-        return bookRepository.save(book);
+        Book savedBook = bookRepository.save(book);
+        bookCache.invalidate(id);
+        bookChangeService.recordUpsert(id);
+        bookSearchIndex.refreshFacets(savedBook);
+        return savedBook;
     }
 }
\ No newline at end of file
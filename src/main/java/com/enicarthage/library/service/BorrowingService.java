@@ -6,18 +6,31 @@ import com.enicarthage.library.entity.User;
 import com.enicarthage.library.repository.BookRepository;
 import com.enicarthage.library.repository.BorrowingRepository;
 import com.enicarthage.library.repository.UserRepository;
+import com.enicarthage.library.util.KeysetCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 
 @Service
 @Transactional
@@ -32,44 +45,92 @@ public class BorrowingService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+    
+    @Autowired
+    private BookCache bookCache;
+    
+    @Autowired
+    private BookChangeService bookChangeService;
+    
+    @Autowired
+    private BookLockManager bookLockManager;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private LoanSummaryCache loanSummaryCache;
+    
+    @Autowired
+    private OverdueTracker overdueTracker;
+    
+    @Autowired
+    private CirculationStats circulationStats;
+    
+    @Autowired
+    private BorrowingArchiveService borrowingArchiveService;
+    
+    @Autowired
+    private CirculationJournal circulationJournal;
+    
+    @Autowired
+    private ReservationService reservationService;
+    
     private static final int STUDENT_BORROW_DAYS = 14;
     private static final int FACULTY_BORROW_DAYS = 30;
     private static final double DAILY_FINE_RATE = 1.0;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_BATCH_CHECKOUT = 20;
+    private static final int MAX_BATCH_RETURN = 500;
+    
+    private static final String DECREMENT_COPIES_SQL = "UPDATE books SET available_copies = available_copies - 1, "
+            + "version = version + 1, updated_at = ? WHERE id = ? AND available_copies > 0";
+    private static final String INSERT_BORROWING_SQL = "INSERT INTO borrowings (user_id, book_id, borrow_date, due_date, "
+            + "status, fine_amount, created_at, updated_at) VALUES (?, ?, ?, ?, ?, 0, ?, ?)";
+    private static final String RETURN_BORROWING_SQL = "UPDATE borrowings SET return_date = ?, status = 'RETURNED', "
+            + "fine_amount = ?, updated_at = ? WHERE id = ? AND status = 'ACTIVE'";
+    // Capped at the total so a stray duplicate return cannot create copies
+    private static final String INCREMENT_COPIES_SQL = "UPDATE books SET available_copies = "
+            + "LEAST(total_copies, available_copies + ?), version = version + 1, updated_at = ? WHERE id = ?";
+    
+    // Sort keys backed by a (key, id) index on borrowings, with how to read them back from a cursor
+    private static final Map<String, Function<String, Object>> SORT_KEYS = Map.of(
+            "borrowDate", LocalDateTime::parse,
+            "dueDate", LocalDateTime::parse,
+            "id", Long::valueOf);
     
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public Borrowing borrowBook(Long bookId, Long userId) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new RuntimeException("Book not found"));
+        // Serializes circulation on this title, which also makes the duplicate-loan check reliable
+        bookLockManager.lock(bookId);
         
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
         
-        // Check if book is available
-        if (book.getAvailableCopies() <= 0) {
-            throw new RuntimeException("Book is not available for borrowing");
-        }
+        // Not loaded yet: the first access after the decrement below reads the updated row
+        Book book = bookRepository.getReferenceById(bookId);
         
         // Check if user has active borrowings for this book
-        List<Borrowing> activeBorrowings = borrowingRepository.findByUserAndBookAndStatus(
-                user, book, Borrowing.BorrowingStatus.ACTIVE);
-        if (!activeBorrowings.isEmpty()) {
+        if (loanSummaryCache.hasBorrowed(userId, bookId)) {
             throw new RuntimeException("User has already borrowed this book");
         }
         
         // Check user's borrowing limit based on role
-        List<Borrowing> userActiveBorrowings = borrowingRepository.findByUserAndStatus(
-                user, Borrowing.BorrowingStatus.ACTIVE);
-        
-        int maxBorrowings = switch (user.getRole()) {
-            case STUDENT -> 5;
-            case FACULTY -> 10;
-            case LIBRARIAN -> 15;
-            default -> 3;
-        };
-        
-        if (userActiveBorrowings.size() >= maxBorrowings) {
+        if (loanSummaryCache.activeLoanCount(userId) >= maxBorrowings(user)) {
             throw new RuntimeException("User has reached maximum borrowing limit");
         }
         
+        // A copy held for the user's reservation is already off the shelf; otherwise claim one atomically
+        boolean held = !reservationService.fulfil(userId, List.of(bookId)).isEmpty();
+        if (!held && bookRepository.decrementAvailableCopies(bookId, LocalDateTime.now()) == 0) {
+            if (!bookRepository.existsById(bookId)) {
+                throw new RuntimeException("Book not found");
+            }
+            throw new RuntimeException("Book is not available for borrowing");
+        }
+        
         // Create borrowing record
         Borrowing borrowing = new Borrowing();
         borrowing.setUser(user);
@@ -77,22 +138,29 @@ public class BorrowingService {
         borrowing.setBorrowDate(LocalDateTime.now());
         
         // Set due date based on user role
-        int borrowDays = switch (user.getRole()) {
-            case STUDENT -> STUDENT_BORROW_DAYS;
-            case FACULTY -> FACULTY_BORROW_DAYS;
-            default -> STUDENT_BORROW_DAYS;
-        };
-        borrowing.setDueDate(LocalDateTime.now().plusDays(borrowDays));
+        borrowing.setDueDate(LocalDateTime.now().plusDays(borrowDays(user)));
         borrowing.setStatus(Borrowing.BorrowingStatus.ACTIVE);
         
-        // Update book available copies
-        book.setAvailableCopies(book.getAvailableCopies() - 1);
-        bookRepository.save(book);
+        bookCache.invalidate(bookId);
+        bookChangeService.recordUpsert(bookId);
         
-        return borrowingRepository.save(borrowing);
+        Borrowing savedBorrowing = borrowingRepository.save(borrowing);
+        loanSummaryCache.recordBorrow(userId, bookId);
+        overdueTracker.track(savedBorrowing.getId(), savedBorrowing.getDueDate());
+        circulationStats.record(null, Borrowing.BorrowingStatus.ACTIVE, 0);
+        circulationJournal.recordBorrow(savedBorrowing.getId(), userId, bookId, savedBorrowing.getDueDate());
+        bookSearchIndex.recordBorrows(bookId, 1);
+        bookSearchIndex.refreshFacets(book);
+        return savedBorrowing;
     }
     
-    public Borrowing returnBook(Long borrowingId) {
+    /**
+     * @return the updated borrowing, and whether the copy went back into circulation; it does not
+     *         when the book's copies were all already counted as available
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public Map<String, Object> returnBook(Long borrowingId) {
+        Long bookId = lockBookOf(borrowingId);
         Borrowing borrowing = borrowingRepository.findById(borrowingId)
                 .orElseThrow(() -> new RuntimeException("Borrowing record not found"));
         
@@ -101,22 +169,225 @@ public class BorrowingService {
         }
         
         // Update borrowing record
+        double previousFine = fineOf(borrowing);
         borrowing.setReturnDate(LocalDateTime.now());
         borrowing.setStatus(Borrowing.BorrowingStatus.RETURNED);
         
         // Calculate fine if overdue
         if (borrowing.getReturnDate().isAfter(borrowing.getDueDate())) {
-            long overdueDays = ChronoUnit.DAYS.between(borrowing.getDueDate(), borrowing.getReturnDate());
-            double fineAmount = overdueDays * DAILY_FINE_RATE;
-            borrowing.setFineAmount(fineAmount);
+            borrowing.setFineAmount(overdueFine(borrowing.getDueDate(), borrowing.getReturnDate()));
         }
         
-        // Update book available copies
-        Book book = borrowing.getBook();
-        book.setAvailableCopies(book.getAvailableCopies() + 1);
-        bookRepository.save(book);
+        // The copy goes to the next reservation in line, or back on the shelf atomically; the book
+        // proxy is still unloaded, so it is read afterwards
+        boolean restocked = reservationService.allocateReturnedCopies(bookId, 1) > 0
+                || bookRepository.incrementAvailableCopies(bookId, LocalDateTime.now()) > 0;
+        bookCache.invalidate(bookId);
+        bookChangeService.recordUpsert(bookId);
+        bookSearchIndex.refreshFacets(borrowing.getBook());
+        loanSummaryCache.recordReturn(borrowing.getUser().getId(), bookId);
+        overdueTracker.untrack(borrowingId);
+        circulationStats.record(Borrowing.BorrowingStatus.ACTIVE, Borrowing.BorrowingStatus.RETURNED,
+                fineOf(borrowing) - previousFine);
+        circulationJournal.recordReturn(borrowingId, borrowing.getUser().getId(), bookId, borrowing.getFineAmount());
         
-        return borrowingRepository.save(borrowing);
+        Map<String, Object> result = new HashMap<>();
+        result.put("borrowing", borrowingRepository.save(borrowing));
+        result.put("copyRestocked", restocked);
+        if (!restocked) {
+            result.put("warning", "All copies of book " + bookId + " were already available; this return was not added");
+        }
+        return result;
+    }
+    
+    /**
+     * Checks out several books for one user in a single transaction. The user, the requested books
+     * and the user's active loans are each loaded once, the limit is applied across the whole
+     * request, and the copy decrements and new loans are written as JDBC batches. Items that cannot
+     * be borrowed are reported individually without failing the others.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public Map<String, Object> borrowBooks(Long userId, List<Long> bookIds) {
+        Set<Long> requested = new LinkedHashSet<>(bookIds);
+        requested.remove(null);
+        if (requested.isEmpty()) {
+            throw new RuntimeException("No books requested");
+        }
+        if (requested.size() > MAX_BATCH_CHECKOUT) {
+            throw new RuntimeException("At most " + MAX_BATCH_CHECKOUT + " books can be borrowed at once");
+        }
+        bookLockManager.lockAll(requested);
+        
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        
+        Map<Long, Integer> availableCopies = new HashMap<>();
+        for (Object[] row : bookRepository.findAvailableCopiesByIdIn(requested)) {
+            availableCopies.put((Long) row[0], (Integer) row[1]);
+        }
+        Set<Long> alreadyBorrowed = new HashSet<>();
+        long[] active = loanSummaryCache.activeBookIds(userId);
+        for (long borrowedBookId : active) {
+            alreadyBorrowed.add(borrowedBookId);
+        }
+        
+        Set<Long> held = reservationService.findHeldBookIds(userId, requested);
+        
+        int remaining = maxBorrowings(user) - active.length;
+        Map<Long, Map<String, Object>> results = new LinkedHashMap<>();
+        List<Long> accepted = new ArrayList<>();
+        for (Long bookId : requested) {
+            Integer copies = availableCopies.get(bookId);
+            String error = null;
+            if (copies == null) {
+                error = "Book not found";
+            } else if (alreadyBorrowed.contains(bookId)) {
+                error = "User has already borrowed this book";
+            } else if (copies <= 0 && !held.contains(bookId)) {
+                error = "Book is not available for borrowing";
+            } else if (accepted.size() >= remaining) {
+                error = "User has reached maximum borrowing limit";
+            } else {
+                accepted.add(bookId);
+            }
+            results.put(bookId, itemResult("bookId", bookId, error));
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> fromShelf = new ArrayList<>(accepted);
+        fromShelf.removeAll(held);
+        List<Long> claimed = claimCopies(fromShelf, now, results);
+        for (Long bookId : accepted) {
+            if (held.contains(bookId)) {
+                claimed.add(bookId);
+            }
+        }
+        if (!claimed.isEmpty()) {
+            reservationService.fulfil(userId, claimed);
+            LocalDateTime dueDate = now.plusDays(borrowDays(user));
+            jdbcTemplate.batchUpdate(INSERT_BORROWING_SQL, claimed, claimed.size(), (ps, bookId) -> {
+                ps.setLong(1, userId);
+                ps.setLong(2, bookId);
+                ps.setTimestamp(3, Timestamp.valueOf(now));
+                ps.setTimestamp(4, Timestamp.valueOf(dueDate));
+                ps.setString(5, Borrowing.BorrowingStatus.ACTIVE.name());
+                ps.setTimestamp(6, Timestamp.valueOf(now));
+                ps.setTimestamp(7, Timestamp.valueOf(now));
+            });
+            
+            // The rows were written with JDBC, so read back their ids (one active loan per user and book)
+            for (Borrowing borrowing : borrowingRepository.findByUserAndStatusAndBookIdIn(
+                    user, Borrowing.BorrowingStatus.ACTIVE, claimed)) {
+                Map<String, Object> result = results.get(borrowing.getBook().getId());
+                result.put("borrowingId", borrowing.getId());
+                result.put("dueDate", borrowing.getDueDate());
+                loanSummaryCache.recordBorrow(userId, borrowing.getBook().getId());
+                overdueTracker.track(borrowing.getId(), borrowing.getDueDate());
+                circulationStats.record(null, Borrowing.BorrowingStatus.ACTIVE, 0);
+                circulationJournal.recordBorrow(borrowing.getId(), userId, borrowing.getBook().getId(),
+                        borrowing.getDueDate());
+            }
+            for (Book book : bookRepository.findAllById(claimed)) {
+                bookCache.invalidate(book.getId());
+                bookChangeService.recordUpsert(book.getId());
+                bookSearchIndex.recordBorrows(book.getId(), 1);
+                bookSearchIndex.refreshFacets(book);
+            }
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("userId", userId);
+        response.put("requested", requested.size());
+        response.put("borrowed", claimed.size());
+        response.put("failed", requested.size() - claimed.size());
+        response.put("results", new ArrayList<>(results.values()));
+        return response;
+    }
+    
+    /**
+     * Returns a pile of borrowings in one transaction. Fines are computed in memory, the loans are
+     * closed with one batched UPDATE and each book gets a single availability increment covering all
+     * of its returned copies. Ids that are unknown or not active are reported without failing the rest.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public Map<String, Object> returnBorrowings(List<Long> borrowingIds) {
+        Set<Long> requested = new LinkedHashSet<>(borrowingIds);
+        requested.remove(null);
+        if (requested.isEmpty()) {
+            throw new RuntimeException("No borrowings given");
+        }
+        if (requested.size() > MAX_BATCH_RETURN) {
+            throw new RuntimeException("At most " + MAX_BATCH_RETURN + " borrowings can be returned at once");
+        }
+        bookLockManager.lockAll(borrowingRepository.findBookIdsByIdIn(requested));
+        
+        Map<Long, Borrowing> borrowings = new HashMap<>();
+        for (Borrowing borrowing : borrowingRepository.findAllById(requested)) {
+            borrowings.put(borrowing.getId(), borrowing);
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp returnDate = Timestamp.valueOf(now);
+        List<Object[]> returned = new ArrayList<>();
+        Map<Long, Integer> copiesPerBook = new LinkedHashMap<>();
+        List<Map<String, Object>> results = new ArrayList<>(requested.size());
+        double totalFines = 0.0;
+        for (Long borrowingId : requested) {
+            Borrowing borrowing = borrowings.get(borrowingId);
+            if (borrowing == null) {
+                results.add(itemResult("borrowingId", borrowingId, "Borrowing record not found"));
+                continue;
+            }
+            if (borrowing.getStatus() != Borrowing.BorrowingStatus.ACTIVE) {
+                results.add(itemResult("borrowingId", borrowingId, "Book is not currently borrowed"));
+                continue;
+            }
+            double fine = now.isAfter(borrowing.getDueDate())
+                    ? overdueFine(borrowing.getDueDate(), now)
+                    : fineOf(borrowing);
+            returned.add(new Object[]{returnDate, fine, returnDate, borrowingId});
+            copiesPerBook.merge(borrowing.getBook().getId(), 1, Integer::sum);
+            loanSummaryCache.recordReturn(borrowing.getUser().getId(), borrowing.getBook().getId());
+            overdueTracker.untrack(borrowingId);
+            circulationStats.record(Borrowing.BorrowingStatus.ACTIVE, Borrowing.BorrowingStatus.RETURNED,
+                    fine - fineOf(borrowing));
+            circulationJournal.recordReturn(borrowingId, borrowing.getUser().getId(), borrowing.getBook().getId(), fine);
+            totalFines += fine;
+            
+            Map<String, Object> result = itemResult("borrowingId", borrowingId, null);
+            result.put("bookId", borrowing.getBook().getId());
+            result.put("fineAmount", fine);
+            results.add(result);
+        }
+        
+        if (!returned.isEmpty()) {
+            jdbcTemplate.batchUpdate(RETURN_BORROWING_SQL, returned);
+            
+            // Reservations waiting for a book take its copies first
+            List<Object[]> increments = new ArrayList<>(copiesPerBook.size());
+            copiesPerBook.forEach((bookId, copies) -> {
+                int shelved = copies - reservationService.allocateReturnedCopies(bookId, copies);
+                if (shelved > 0) {
+                    increments.add(new Object[]{shelved, returnDate, bookId});
+                }
+            });
+            if (!increments.isEmpty()) {
+                jdbcTemplate.batchUpdate(INCREMENT_COPIES_SQL, increments);
+            }
+            for (Book book : bookRepository.findAllById(copiesPerBook.keySet())) {
+                bookCache.invalidate(book.getId());
+                bookChangeService.recordUpsert(book.getId());
+                bookSearchIndex.refreshFacets(book);
+            }
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("requested", requested.size());
+        response.put("returned", returned.size());
+        response.put("failed", requested.size() - returned.size());
+        response.put("totalFines", totalFines);
+        response.put("results", results);
+        return response;
     }
     
     public List<Borrowing> getAllBorrowings() {
@@ -127,20 +398,38 @@ public class BorrowingService {
         return borrowingRepository.findAll(pageable);
     }
     
+    public Map<String, Object> getBorrowings(String cursor, int size, String sortBy, String sortDir) {
+        if (!SORT_KEYS.containsKey(sortBy)) {
+            throw new RuntimeException("Unsupported sort field: " + sortBy + ". Allowed: " + SORT_KEYS.keySet());
+        }
+        Sort.Direction direction = sortDir.equalsIgnoreCase("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
+        ScrollPosition position = KeysetCursor.position(cursor, sortBy, direction, SORT_KEYS);
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        
+        return KeysetCursor.slice(
+                borrowingRepository.findAllBy(position, KeysetCursor.sort(sortBy, direction), Limit.of(limit)),
+                sortBy, direction);
+    }
+    
     public List<Borrowing> getBorrowingsByUser(Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
-        return borrowingRepository.findByUser(user);
+        return getBorrowingsByUser(user);
     }
     
+    // Live loans first, then the archived history
     public List<Borrowing> getBorrowingsByUser(User user) {
-        return borrowingRepository.findByUser(user);
+        List<Borrowing> borrowings = new ArrayList<>(borrowingRepository.findByUser(user));
+        borrowings.addAll(borrowingArchiveService.getArchivedBorrowingsByUser(user));
+        return borrowings;
     }
     
     public List<Borrowing> getBorrowingsByBook(Long bookId) {
         Book book = bookRepository.findById(bookId)
                 .orElseThrow(() -> new RuntimeException("Book not found"));
-        return borrowingRepository.findByBook(book);
+        List<Borrowing> borrowings = new ArrayList<>(borrowingRepository.findByBook(book));
+        borrowings.addAll(borrowingArchiveService.getArchivedBorrowingsByBook(book));
+        return borrowings;
     }
     
     public List<Borrowing> getActiveBorrowings() {
@@ -151,7 +440,17 @@ public class BorrowingService {
         return borrowingRepository.findOverdueBorrowings(LocalDateTime.now());
     }
     
+    // Served from the due-date tracker once it has loaded, instead of scanning borrowings
+    public long getOverdueCount() {
+        if (overdueTracker.isLoaded()) {
+            return overdueTracker.getOverdueCount();
+        }
+        return borrowingRepository.countOverdueBorrowings(LocalDateTime.now());
+    }
+    
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public Borrowing extendDueDate(Long borrowingId, int days) {
+        Long bookId = lockBookOf(borrowingId);
         Borrowing borrowing = borrowingRepository.findById(borrowingId)
                 .orElseThrow(() -> new RuntimeException("Borrowing record not found"));
         
@@ -165,6 +464,8 @@ public class BorrowingService {
         }
         
         borrowing.setDueDate(borrowing.getDueDate().plusDays(days));
+        overdueTracker.track(borrowingId, borrowing.getDueDate());
+        circulationJournal.recordExtend(borrowingId, borrowing.getUser().getId(), bookId, borrowing.getDueDate());
         return borrowingRepository.save(borrowing);
     }
     
@@ -172,23 +473,25 @@ public class BorrowingService {
         Borrowing borrowing = borrowingRepository.findById(borrowingId)
                 .orElseThrow(() -> new RuntimeException("Borrowing record not found"));
         
+        double previousFine = fineOf(borrowing);
         borrowing.setFineAmount(fineAmount);
+        circulationStats.record(borrowing.getStatus(), borrowing.getStatus(), fineOf(borrowing) - previousFine);
+        circulationJournal.recordFine(borrowingId, borrowing.getUser().getId(), borrowing.getBook().getId(), fineAmount);
         return borrowingRepository.save(borrowing);
     }
     
     public Map<String, Object> getBorrowingStatistics() {
         Map<String, Object> statistics = new HashMap<>();
         
-        statistics.put("totalBorrowings", borrowingRepository.count());
-        statistics.put("activeBorrowings", borrowingRepository.countByStatus(Borrowing.BorrowingStatus.ACTIVE));
-        statistics.put("overdueBorrowings", borrowingRepository.countOverdueBorrowings(LocalDateTime.now()));
-        statistics.put("returnedBorrowings", borrowingRepository.countByStatus(Borrowing.BorrowingStatus.RETURNED));
-        
-        // Calculate total fines
-        Double totalFines = borrowingRepository.findAll().stream()
-                .mapToDouble(borrowing -> borrowing.getFineAmount() != null ? borrowing.getFineAmount() : 0.0)
-                .sum();
-        statistics.put("totalFines", totalFines);
+        // Maintained totals; only computed from the table if they have not been loaded yet
+        if (!circulationStats.isLoaded()) {
+            circulationStats.verify();
+        }
+        statistics.put("totalBorrowings", circulationStats.getTotalCount());
+        statistics.put("activeBorrowings", circulationStats.getCount(Borrowing.BorrowingStatus.ACTIVE));
+        statistics.put("overdueBorrowings", getOverdueCount());
+        statistics.put("returnedBorrowings", circulationStats.getCount(Borrowing.BorrowingStatus.RETURNED));
+        statistics.put("totalFines", circulationStats.getTotalFines());
         
         return statistics;
     }
@@ -201,5 +504,95 @@ public class BorrowingService {
         Borrowing borrowing = borrowingRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Borrowing record not found"));
         borrowingRepository.delete(borrowing);
+        loanSummaryCache.invalidate(borrowing.getUser().getId());
+        overdueTracker.untrack(id);
+        circulationStats.record(borrowing.getStatus(), null, -fineOf(borrowing));
+    }
+    
+    public Map<String, Object> getLoanSummaryStatistics() {
+        return loanSummaryCache.getStatistics();
+    }
+    
+    public Map<String, Object> getOverdueTrackerStatistics() {
+        return overdueTracker.getStatistics();
+    }
+    
+    public Map<String, Object> getCirculationStatsStatistics() {
+        return circulationStats.getStatistics();
+    }
+    
+    public Map<String, Object> getJournalStatistics() {
+        return circulationJournal.getStatistics();
+    }
+    
+    public Map<String, Object> verifyJournal() {
+        return circulationJournal.verify();
+    }
+    
+    public Map<String, Object> getLockStatistics() {
+        return bookLockManager.getStatistics();
+    }
+    
+    private static double fineOf(Borrowing borrowing) {
+        return borrowing.getFineAmount() != null ? borrowing.getFineAmount() : 0.0;
+    }
+    
+    private double overdueFine(LocalDateTime dueDate, LocalDateTime returnDate) {
+        return ChronoUnit.DAYS.between(dueDate, returnDate) * DAILY_FINE_RATE;
+    }
+    
+    private int maxBorrowings(User user) {
+        return switch (user.getRole()) {
+            case STUDENT -> 5;
+            case FACULTY -> 10;
+            case LIBRARIAN -> 15;
+            default -> 3;
+        };
+    }
+    
+    private int borrowDays(User user) {
+        return switch (user.getRole()) {
+            case STUDENT -> STUDENT_BORROW_DAYS;
+            case FACULTY -> FACULTY_BORROW_DAYS;
+            default -> STUDENT_BORROW_DAYS;
+        };
+    }
+    
+    // Decrements one copy of each book in a single batch; a book whose guard fails is reported and skipped
+    private List<Long> claimCopies(List<Long> bookIds, LocalDateTime now, Map<Long, Map<String, Object>> results) {
+        if (bookIds.isEmpty()) {
+            return bookIds;
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(DECREMENT_COPIES_SQL, bookIds, bookIds.size(), (ps, bookId) -> {
+            ps.setTimestamp(1, Timestamp.valueOf(now));
+            ps.setLong(2, bookId);
+        });
+        List<Long> claimed = new ArrayList<>(bookIds.size());
+        for (int i = 0; i < bookIds.size(); i++) {
+            if (counts[0][i] == 0) {
+                results.put(bookIds.get(i), itemResult("bookId", bookIds.get(i), "Book is not available for borrowing"));
+            } else {
+                claimed.add(bookIds.get(i));
+            }
+        }
+        return claimed;
+    }
+    
+    private Map<String, Object> itemResult(String idName, Long id, String error) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put(idName, id);
+        result.put("success", error == null);
+        if (error != null) {
+            result.put("error", error);
+        }
+        return result;
+    }
+    
+    // The borrowing's book never changes, so it can be looked up before the lock is taken
+    private Long lockBookOf(Long borrowingId) {
+        Long bookId = borrowingRepository.findBookIdById(borrowingId)
+                .orElseThrow(() -> new RuntimeException("Borrowing record not found"));
+        bookLockManager.lock(bookId);
+        return bookId;
     }
 }
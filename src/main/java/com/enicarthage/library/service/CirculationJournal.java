@@ -0,0 +1,270 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.entity.JournalAnchor;
+import com.enicarthage.library.journal.JournalReader;
+import com.enicarthage.library.journal.JournalRecord;
+import com.enicarthage.library.journal.JournalReplay;
+import com.enicarthage.library.journal.JournalWriter;
+import com.enicarthage.library.repository.JournalAnchorRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only journal of circulation events (borrow, return, extend, fine) for audit and offline
+ * replay. Events are appended after their transaction commits, so the journal never records a
+ * rolled-back change and adds no fsync to the request; a background thread forces the mapped
+ * segment every library.journal.flush-interval-ms, making all events since the previous flush
+ * durable with one write. If the journal cannot be opened it is disabled and circulation goes on.
+ *
+ * The hash chain is keyed with library.journal.secret, and every
+ * library.journal.anchor-interval-ms the durable head (sequence and chain) is saved to the
+ * journal_anchor row, so {@link #verify()} also catches records dropped from the end of the journal.
+ */
+@Component
+public class CirculationJournal {
+    
+    private static final int ANCHOR_ID = 1;
+    
+    @Value("${library.journal.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${library.journal.directory:./data/journal}")
+    private String directory;
+    
+    @Value("${library.journal.segment-size-mb:64}")
+    private int segmentSizeMb;
+    
+    @Value("${library.journal.flush-interval-ms:10}")
+    private long flushIntervalMs;
+    
+    @Value("${library.journal.secret:}")
+    private String secret;
+    
+    @Autowired
+    private JournalAnchorRepository journalAnchorRepository;
+    
+    private volatile JournalWriter writer;
+    private Thread flusher;
+    
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong forces = new AtomicLong();
+    private final AtomicLong anchorFailures = new AtomicLong();
+    
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            writer = new JournalWriter(Path.of(directory), segmentSizeMb * 1024 * 1024, key());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Circulation journal disabled, cannot open " + directory + ": " + e.getMessage());
+            return;
+        }
+        flusher = new Thread(this::flushLoop, "circulation-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    @PreDestroy
+    public void close() {
+        JournalWriter current = writer;
+        if (current == null) {
+            return;
+        }
+        writer = null;
+        flusher.interrupt();
+        try {
+            flusher.join(1000);
+            current.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close circulation journal: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public void recordBorrow(Long borrowingId, Long userId, Long bookId, LocalDateTime dueDate) {
+        record(JournalRecord.Type.BORROW, borrowingId, userId, bookId, toMillis(dueDate));
+    }
+    
+    public void recordExtend(Long borrowingId, Long userId, Long bookId, LocalDateTime dueDate) {
+        record(JournalRecord.Type.EXTEND, borrowingId, userId, bookId, toMillis(dueDate));
+    }
+    
+    public void recordReturn(Long borrowingId, Long userId, Long bookId, Double fine) {
+        record(JournalRecord.Type.RETURN, borrowingId, userId, bookId, toCents(fine));
+    }
+    
+    public void recordFine(Long borrowingId, Long userId, Long bookId, Double fine) {
+        record(JournalRecord.Type.FINE, borrowingId, userId, bookId, toCents(fine));
+    }
+    
+    /**
+     * Saves the journal's durable head as the anchor. An anchor is never moved backwards: a journal
+     * that is behind its anchor has lost records, which verification then reports.
+     */
+    @Scheduled(initialDelayString = "${library.journal.anchor-interval-ms:60000}",
+            fixedDelayString = "${library.journal.anchor-interval-ms:60000}")
+    public void anchor() {
+        JournalWriter current = writer;
+        if (current == null) {
+            return;
+        }
+        long[] head = current.getHead();
+        if (head[0] == 0 || current.force() < head[0]) {
+            return;
+        }
+        try {
+            JournalAnchor anchor = journalAnchorRepository.findById(ANCHOR_ID).orElseGet(JournalAnchor::new);
+            if (anchor.getLastSequence() != null && anchor.getLastSequence() >= head[0]) {
+                if (anchor.getLastSequence() > head[0]) {
+                    anchorFailures.incrementAndGet();
+                    System.err.println("Circulation journal ends at sequence " + head[0] + ", before its anchor at "
+                            + anchor.getLastSequence());
+                }
+                return;
+            }
+            anchor.setId(ANCHOR_ID);
+            anchor.setLastSequence(head[0]);
+            anchor.setHeadChain(head[1]);
+            anchor.setAnchoredAt(LocalDateTime.now());
+            journalAnchorRepository.save(anchor);
+        } catch (RuntimeException e) {
+            anchorFailures.incrementAndGet();
+            System.err.println("Failed to anchor circulation journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Replays the whole journal, checking sequence continuity, the keyed hash chain and the anchor,
+     * and returns the rebuilt circulation summary.
+     */
+    public Map<String, Object> verify() {
+        JournalWriter current = writer;
+        if (current == null) {
+            throw new RuntimeException("Circulation journal is not enabled");
+        }
+        current.force();
+        JournalAnchor anchor = journalAnchorRepository.findById(ANCHOR_ID).orElse(null);
+        long anchorSequence = anchor != null ? anchor.getLastSequence() : 0;
+        long anchorChain = anchor != null ? anchor.getHeadChain() : 0;
+        JournalReplay replay = new JournalReplay();
+        long records;
+        try {
+            JournalReader reader = new JournalReader(current.getDirectory(), key());
+            records = reader.replay(replay::apply, anchorSequence, anchorChain);
+        } catch (IOException | IllegalStateException e) {
+            throw new RuntimeException("Journal verification failed: " + e.getMessage());
+        }
+        Map<String, Object> summary = replay.summary(records);
+        summary.put("headChain", Long.toHexString(current.getLastChain()));
+        summary.put("anchoredSequence", anchorSequence);
+        return summary;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        JournalWriter current = writer;
+        statistics.put("enabled", current != null);
+        statistics.put("appended", appended.get());
+        statistics.put("failures", failures.get());
+        statistics.put("forces", forces.get());
+        statistics.put("anchorFailures", anchorFailures.get());
+        if (current != null) {
+            statistics.put("lastSequence", current.getLastSequence());
+            statistics.put("durableSequence", current.getDurableSequence());
+            statistics.put("segments", current.getSegments());
+            statistics.put("headChain", Long.toHexString(current.getLastChain()));
+        }
+        return statistics;
+    }
+    
+    private void record(JournalRecord.Type type, Long borrowingId, Long userId, Long bookId, long value) {
+        if (writer == null) {
+            return;
+        }
+        long borrowing = borrowingId != null ? borrowingId : 0;
+        long user = userId != null ? userId : 0;
+        long book = bookId != null ? bookId : 0;
+        afterCommit(() -> append(type, borrowing, user, book, value));
+    }
+    
+    private void append(JournalRecord.Type type, long borrowingId, long userId, long bookId, long value) {
+        JournalWriter current = writer;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.append(type, borrowingId, userId, bookId, value);
+            appended.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            // The change itself is committed; losing its journal entry must not fail the request
+            failures.incrementAndGet();
+            System.err.println("Failed to journal " + type + " of borrowing " + borrowingId + ": " + e.getMessage());
+        }
+    }
+    
+    private void flushLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(flushIntervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            JournalWriter current = writer;
+            if (current == null) {
+                return;
+            }
+            long durable = current.getDurableSequence();
+            try {
+                if (current.force() > durable) {
+                    forces.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Failed to flush circulation journal: " + e.getMessage());
+            }
+        }
+    }
+    
+    private byte[] key() {
+        return secret.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime != null ? dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0;
+    }
+    
+    private static long toCents(Double amount) {
+        return amount != null ? Math.round(amount * 100) : 0;
+    }
+    
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+}
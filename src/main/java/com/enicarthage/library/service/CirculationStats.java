@@ -0,0 +1,221 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.entity.Borrowing;
+import com.enicarthage.library.repository.BorrowingArchiveRepository;
+import com.enicarthage.library.repository.BorrowingRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Running circulation totals over live and archived loans: loan count per status and the sum of
+ * fines (in cents). Writers report each change through {@link #record}; the changes of one
+ * transaction are collected and applied together only if it commits. {@link #verify()} recomputes
+ * the totals from the database at startup and periodically, replacing them when they disagree.
+ */
+@Component
+public class CirculationStats {
+    
+    private static final Borrowing.BorrowingStatus[] STATUSES = Borrowing.BorrowingStatus.values();
+    
+    @Autowired
+    private BorrowingRepository borrowingRepository;
+    
+    @Autowired
+    private BorrowingArchiveRepository borrowingArchiveRepository;
+    
+    private final long[] countByStatus = new long[STATUSES.length];
+    private long fineCents;
+    private boolean loaded;
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    // A verification is only trusted if no transaction committed changes while it was reading
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicInteger committing = new AtomicInteger();
+    
+    private final AtomicLong verifications = new AtomicLong();
+    private final AtomicLong corrections = new AtomicLong();
+    
+    /**
+     * Records a loan moving from one status to another ({@code null} for created or deleted) and
+     * a change in its fine.
+     */
+    public void record(Borrowing.BorrowingStatus from, Borrowing.BorrowingStatus to, double fineDelta) {
+        Delta delta = currentDelta();
+        if (from != null) {
+            delta.counts[from.ordinal()]--;
+        }
+        if (to != null) {
+            delta.counts[to.ordinal()]++;
+        }
+        delta.fineCents += toCents(fineDelta);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(delta);
+        }
+    }
+    
+    /**
+     * Marks the current transaction as moving loans between tables without changing any total, so
+     * a verification running at the same time is discarded.
+     */
+    public void recordRelocation() {
+        record(null, null, 0);
+    }
+    
+    public boolean isLoaded() {
+        lock.lock();
+        try {
+            return loaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public long getCount(Borrowing.BorrowingStatus status) {
+        lock.lock();
+        try {
+            return countByStatus[status.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public long getTotalCount() {
+        lock.lock();
+        try {
+            long total = 0;
+            for (long count : countByStatus) {
+                total += count;
+            }
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public double getTotalFines() {
+        lock.lock();
+        try {
+            return fineCents / 100.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${library.circulation.verify-interval-ms:900000}",
+            fixedDelayString = "${library.circulation.verify-interval-ms:900000}")
+    public void verify() {
+        if (committing.get() > 0) {
+            return;
+        }
+        long observed = generation.get();
+        long[] counts = new long[STATUSES.length];
+        long cents = 0;
+        List<Object[]> rows = new ArrayList<>(borrowingRepository.summarizeByStatus());
+        rows.addAll(borrowingArchiveRepository.summarizeByStatus());
+        for (Object[] row : rows) {
+            if (row[0] != null) {
+                counts[((Borrowing.BorrowingStatus) row[0]).ordinal()] += (Long) row[1];
+            }
+            cents += row[2] != null ? toCents(((Number) row[2]).doubleValue()) : 0;
+        }
+        
+        lock.lock();
+        try {
+            if (committing.get() > 0 || generation.get() != observed) {
+                // Changed underneath; the next run will catch up
+                return;
+            }
+            verifications.incrementAndGet();
+            boolean matches = cents == fineCents;
+            for (int i = 0; i < counts.length; i++) {
+                matches &= counts[i] == countByStatus[i];
+            }
+            if (!matches) {
+                if (loaded) {
+                    corrections.incrementAndGet();
+                }
+                System.arraycopy(counts, 0, countByStatus, 0, counts.length);
+                fineCents = cents;
+            }
+            loaded = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("loaded", isLoaded());
+        statistics.put("verifications", verifications.get());
+        statistics.put("corrections", corrections.get());
+        return statistics;
+    }
+    
+    private Delta currentDelta() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new Delta();
+        }
+        Delta delta = (Delta) TransactionSynchronizationManager.getResource(this);
+        if (delta == null) {
+            Delta created = new Delta();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    committing.incrementAndGet();
+                    created.committing = true;
+                }
+                
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CirculationStats.this);
+                    if (status == STATUS_COMMITTED) {
+                        apply(created);
+                    }
+                    if (created.committing) {
+                        committing.decrementAndGet();
+                    }
+                }
+            });
+            delta = created;
+        }
+        return delta;
+    }
+    
+    private void apply(Delta delta) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            for (int i = 0; i < countByStatus.length; i++) {
+                countByStatus[i] += delta.counts[i];
+            }
+            fineCents += delta.fineCents;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+    
+    private static final class Delta {
+        final long[] counts = new long[STATUSES.length];
+        long fineCents;
+        boolean committing;
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -101,6 +102,22 @@ public class EventService {
         return eventRepository.findUpcomingEvents(LocalDateTime.now());
     }
     
+    public String getEventsFingerprint() {
+        return fingerprint(eventRepository.summarizeEvents());
+    }
+    
+    public String getUpcomingEventsFingerprint() {
+        return fingerprint(eventRepository.summarizeUpcomingEvents(LocalDateTime.now()));
+    }
+    
+    private String fingerprint(List<Object[]> summary) {
+        Object[] row = summary.get(0);
+        LocalDateTime lastUpdate = (LocalDateTime) row[1];
+        String updated = lastUpdate != null ? Long.toString(lastUpdate.toEpochSecond(ZoneOffset.UTC) * 1000
+                + lastUpdate.getNano() / 1_000_000) : "0";
+        return row[0] + "-" + updated + "-" + row[2];
+    }
+    
     public List<Event> getOngoingEvents() {
         LocalDateTime now = LocalDateTime.now();
         return eventRepository.findOngoingEvents(now, now);
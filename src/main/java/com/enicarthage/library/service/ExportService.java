@@ -0,0 +1,83 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.repository.BookRepository;
+import com.enicarthage.library.repository.BorrowingArchiveRepository;
+import com.enicarthage.library.repository.BorrowingRepository;
+import com.enicarthage.library.util.ExportWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Catalog and circulation exports. Rows come from forward-only scalar streams (see the
+ * repositories' streamForExport queries), so nothing enters the persistence context and heap use
+ * stays flat however large the table is. Must be called on the thread that writes the response,
+ * since the stream only lives as long as the transaction. The circulation export covers live loans
+ * followed by archived ones.
+ */
+@Service
+public class ExportService {
+    
+    // Must match the select lists of the streamForExport queries
+    private static final String[] BOOK_COLUMNS = {
+            "id", "title", "author", "isbn", "publisher", "publicationYear", "category", "status",
+            "totalCopies", "availableCopies", "shelfLocation", "language", "pages", "price",
+            "createdAt", "updatedAt"};
+    
+    private static final String[] BORROWING_COLUMNS = {
+            "id", "userId", "bookId", "borrowDate", "dueDate", "returnDate", "status", "fineAmount", "notes"};
+    
+    private static final int FLUSH_EVERY_ROWS = 1000;
+    
+    @Autowired
+    private BookRepository bookRepository;
+    
+    @Autowired
+    private BorrowingRepository borrowingRepository;
+    
+    @Autowired
+    private BorrowingArchiveRepository borrowingArchiveRepository;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Transactional(readOnly = true)
+    public long exportBooks(String format, OutputStream out) throws IOException {
+        ExportWriter writer = new ExportWriter(out, format, BOOK_COLUMNS, objectMapper);
+        try (Stream<Object[]> rows = bookRepository.streamForExport()) {
+            write(rows, writer);
+        }
+        return writer.getRows();
+    }
+    
+    @Transactional(readOnly = true)
+    public long exportBorrowings(String format, OutputStream out) throws IOException {
+        ExportWriter writer = new ExportWriter(out, format, BORROWING_COLUMNS, objectMapper);
+        try (Stream<Object[]> rows = borrowingRepository.streamForExport()) {
+            write(rows, writer);
+        }
+        // Opened only once the live stream is closed: a streaming result set holds the connection
+        try (Stream<Object[]> rows = borrowingArchiveRepository.streamForExport()) {
+            write(rows, writer);
+        }
+        return writer.getRows();
+    }
+    
+    private void write(Stream<Object[]> rows, ExportWriter writer) throws IOException {
+        Iterator<Object[]> iterator = rows.iterator();
+        while (iterator.hasNext()) {
+            writer.write(iterator.next());
+            // Push data to the client regularly instead of buffering a large response
+            if (writer.getRows() % FLUSH_EVERY_ROWS == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,244 @@
+package com.enicarthage.library.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key support for non-repeatable endpoints. The first request with a key runs and, if
+ * it succeeds, its serialized response is kept for library.idempotency.ttl-seconds; retries with
+ * the same key get that response back without running again. A duplicate arriving while the first
+ * is still running waits for it instead of starting a second execution. Keys are scoped to the
+ * authenticated user, and reusing one for a different request is rejected. Failed responses are
+ * handed to waiting duplicates but not kept, so a later retry runs again.
+ */
+@Component
+public class IdempotencyStore {
+    
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${library.idempotency.maximum-entries:10000}")
+    private int maximumEntries;
+    
+    @Value("${library.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+    
+    @Value("${library.idempotency.wait-timeout-ms:10000}")
+    private long waitTimeoutMs;
+    
+    // All entries share one TTL, so insertion order is also expiry order
+    private final LinkedHashMap<String, Stored> completed = new LinkedHashMap<>();
+    private final Map<String, InFlight> inFlight = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    private static final class Stored {
+        final String fingerprint;
+        final HttpStatusCode status;
+        final byte[] body;
+        final long expiresAt;
+        
+        Stored(String fingerprint, HttpStatusCode status, byte[] body, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.status = status;
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+    private static final class InFlight {
+        final String fingerprint;
+        final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+        
+        InFlight(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+    
+    /**
+     * Runs the action once per key. Without a key the action simply runs.
+     *
+     * @param key the Idempotency-Key header, may be null
+     * @param fingerprint identifies the request (endpoint and arguments) the key was first used for
+     */
+    public ResponseEntity<?> execute(String key, String fingerprint, Supplier<ResponseEntity<?>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return error(HttpStatus.BAD_REQUEST, HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+        String scopedKey = currentUser() + ":" + key;
+        
+        InFlight running;
+        InFlight owned = null;
+        lock.lock();
+        try {
+            purgeExpired(System.nanoTime());
+            Stored stored = completed.get(scopedKey);
+            if (stored != null) {
+                if (!stored.fingerprint.equals(fingerprint)) {
+                    return conflict();
+                }
+                replays.incrementAndGet();
+                return replay(stored);
+            }
+            running = inFlight.get(scopedKey);
+            if (running == null) {
+                owned = new InFlight(fingerprint);
+                inFlight.put(scopedKey, owned);
+            }
+        } finally {
+            lock.unlock();
+        }
+        
+        if (owned != null) {
+            return run(scopedKey, owned, action);
+        }
+        if (!running.fingerprint.equals(fingerprint)) {
+            return conflict();
+        }
+        collapsed.incrementAndGet();
+        return await(running);
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            statistics.put("stored", completed.size());
+            statistics.put("inFlight", inFlight.size());
+        } finally {
+            lock.unlock();
+        }
+        statistics.put("maximumEntries", maximumEntries);
+        statistics.put("executions", executions.get());
+        statistics.put("replays", replays.get());
+        statistics.put("collapsed", collapsed.get());
+        statistics.put("conflicts", conflicts.get());
+        statistics.put("evictions", evictions.get());
+        return statistics;
+    }
+    
+    private ResponseEntity<?> run(String scopedKey, InFlight owned, Supplier<ResponseEntity<?>> action) {
+        executions.incrementAndGet();
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            release(scopedKey, null);
+            owned.response.completeExceptionally(e);
+            throw e;
+        }
+        release(scopedKey, response.getStatusCode().is2xxSuccessful() ? store(owned.fingerprint, response) : null);
+        owned.response.complete(response);
+        return response;
+    }
+    
+    private ResponseEntity<?> await(InFlight running) {
+        try {
+            ResponseEntity<?> response = running.response.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+            return ResponseEntity.status(response.getStatusCode())
+                    .headers(response.getHeaders())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(response.getBody());
+        } catch (TimeoutException e) {
+            return error(HttpStatus.CONFLICT, "A request with this " + HEADER + " is still being processed");
+        } catch (ExecutionException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return error(HttpStatus.CONFLICT, "A request with this " + HEADER + " is still being processed");
+        }
+    }
+    
+    private Stored store(String fingerprint, ResponseEntity<?> response) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(response.getBody());
+            return new Stored(fingerprint, response.getStatusCode(), body,
+                    System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds));
+        } catch (JsonProcessingException e) {
+            System.err.println("Idempotent response not stored: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private void release(String scopedKey, Stored stored) {
+        lock.lock();
+        try {
+            inFlight.remove(scopedKey);
+            if (stored == null) {
+                return;
+            }
+            completed.put(scopedKey, stored);
+            Iterator<Stored> eldest = completed.values().iterator();
+            while (completed.size() > maximumEntries) {
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void purgeExpired(long now) {
+        Iterator<Stored> eldest = completed.values().iterator();
+        while (eldest.hasNext() && eldest.next().expiresAt - now <= 0) {
+            eldest.remove();
+        }
+    }
+    
+    private ResponseEntity<?> replay(Stored stored) {
+        return ResponseEntity.status(stored.status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(REPLAYED_HEADER, "true")
+                .body(stored.body);
+    }
+    
+    private ResponseEntity<?> conflict() {
+        conflicts.incrementAndGet();
+        return error(HttpStatus.UNPROCESSABLE_ENTITY, HEADER + " was already used for a different request");
+    }
+    
+    private static ResponseEntity<?> error(HttpStatus status, String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        return ResponseEntity.status(status).body(error);
+    }
+    
+    private static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "anonymous";
+    }
+}
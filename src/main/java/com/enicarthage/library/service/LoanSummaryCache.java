@@ -0,0 +1,263 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.repository.BorrowingRepository;
+import com.enicarthage.library.util.LongObjectHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Per-user summary of active loans (the borrowed book ids, whose length is the active count), so
+ * the borrow limit and duplicate-loan checks need no query. Users are loaded lazily from the
+ * database; borrow and return update the summary once their transaction commits, and
+ * {@link #reconcile()} periodically re-reads the cached users to repair any drift.
+ */
+@Component
+public class LoanSummaryCache {
+    
+    private static final long[] NO_LOANS = new long[0];
+    private static final int RECONCILE_CHUNK = 500;
+    
+    @Autowired
+    private BorrowingRepository borrowingRepository;
+    
+    private final LongObjectHashMap<long[]> loansByUser = new LongObjectHashMap<>(1024);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // A load is only stored if no change was applied or committing while it read: a transaction is
+    // counted from beforeCommit, so its rows can be visible to a load before its change is applied
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicInteger committing = new AtomicInteger();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong corrections = new AtomicLong();
+    
+    public int activeLoanCount(long userId) {
+        return activeBookIds(userId).length;
+    }
+    
+    public boolean hasBorrowed(long userId, long bookId) {
+        for (long borrowed : activeBookIds(userId)) {
+            if (borrowed == bookId) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Ids of the books the user currently has on loan. The returned array must not be modified.
+     */
+    public long[] activeBookIds(long userId) {
+        lock.readLock().lock();
+        try {
+            long[] loans = loansByUser.get(userId);
+            if (loans != null) {
+                hits.incrementAndGet();
+                return loans;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        misses.incrementAndGet();
+        boolean quiet = committing.get() == 0;
+        long observed = generation.get();
+        long[] loans = toArray(borrowingRepository.findActiveBookIdsByUserId(userId));
+        lock.writeLock().lock();
+        try {
+            if (quiet && committing.get() == 0 && generation.get() == observed) {
+                loansByUser.put(userId, loans);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return loans;
+    }
+    
+    public void recordBorrow(long userId, long bookId) {
+        afterCommit(() -> update(userId, bookId, true));
+    }
+    
+    public void recordReturn(long userId, long bookId) {
+        afterCommit(() -> update(userId, bookId, false));
+    }
+    
+    public void invalidate(long userId) {
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                generation.incrementAndGet();
+                loansByUser.remove(userId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+    
+    /**
+     * Re-reads the active loans of every cached user and replaces summaries that disagree with the
+     * database. Chunks that changed while being read are left for the next run.
+     */
+    @Scheduled(fixedDelayString = "${library.loans.reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        List<Long> userIds = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            loansByUser.forEach((userId, loans) -> userIds.add(userId));
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        for (int from = 0; from < userIds.size(); from += RECONCILE_CHUNK) {
+            List<Long> chunk = userIds.subList(from, Math.min(from + RECONCILE_CHUNK, userIds.size()));
+            boolean quiet = committing.get() == 0;
+            long observed = generation.get();
+            Map<Long, List<Long>> actual = new HashMap<>();
+            for (Object[] row : borrowingRepository.findActiveLoansByUserIdIn(chunk)) {
+                actual.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((Long) row[1]);
+            }
+            
+            lock.writeLock().lock();
+            try {
+                if (!quiet || committing.get() > 0 || generation.get() != observed) {
+                    continue;
+                }
+                for (Long userId : chunk) {
+                    long[] cached = loansByUser.get(userId);
+                    long[] loans = toArray(actual.getOrDefault(userId, List.of()));
+                    if (cached != null && !sameLoans(cached, loans)) {
+                        loansByUser.put(userId, loans);
+                        corrections.incrementAndGet();
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+    
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            statistics.put("cachedUsers", loansByUser.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        statistics.put("hits", hitCount);
+        statistics.put("misses", misses.get());
+        statistics.put("hitRate", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        statistics.put("reconcileCorrections", corrections.get());
+        return statistics;
+    }
+    
+    private void update(long userId, long bookId, boolean borrowed) {
+        lock.writeLock().lock();
+        try {
+            generation.incrementAndGet();
+            long[] loans = loansByUser.get(userId);
+            if (loans == null) {
+                // Not cached: the next lookup reads the committed state
+                return;
+            }
+            int index = indexOf(loans, bookId);
+            if (borrowed) {
+                // Already there if a load read the committed loan first; a user holds one loan per book
+                if (index >= 0) {
+                    return;
+                }
+                long[] grown = Arrays.copyOf(loans, loans.length + 1);
+                grown[loans.length] = bookId;
+                loansByUser.put(userId, grown);
+                return;
+            }
+            if (index >= 0) {
+                long[] shrunk = new long[loans.length - 1];
+                System.arraycopy(loans, 0, shrunk, 0, index);
+                System.arraycopy(loans, index + 1, shrunk, index, loans.length - index - 1);
+                loansByUser.put(userId, shrunk);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Applies a change only if the surrounding transaction commits, and holds off loads from its
+    // beforeCommit until the change is applied
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean counted;
+            
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                committing.incrementAndGet();
+                counted = true;
+            }
+            
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        change.run();
+                    }
+                } finally {
+                    if (counted) {
+                        committing.decrementAndGet();
+                    }
+                }
+            }
+        });
+    }
+    
+    private static int indexOf(long[] loans, long bookId) {
+        for (int i = 0; i < loans.length; i++) {
+            if (loans[i] == bookId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static long[] toArray(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return NO_LOANS;
+        }
+        long[] array = new long[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+    
+    private static boolean sameLoans(long[] a, long[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        long[] sortedA = a.clone();
+        long[] sortedB = b.clone();
+        Arrays.sort(sortedA);
+        Arrays.sort(sortedB);
+        return Arrays.equals(sortedA, sortedB);
+    }
+}
@@ -0,0 +1,60 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.entity.Borrowing;
+import com.enicarthage.library.repository.BorrowingRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the reminders {@link OverdueTracker} fires on the async executor, so a slow mail server
+ * holds up neither the tracker's tick nor the other jobs sharing the scheduler thread.
+ */
+@Component
+public class OverdueReminderSender {
+    
+    @Autowired
+    private BorrowingRepository borrowingRepository;
+    
+    @Autowired
+    private NotificationService notificationService;
+    
+    private final AtomicLong remindersSent = new AtomicLong();
+    private final AtomicLong reminderFailures = new AtomicLong();
+    
+    @Async
+    public void send(List<Long> overdue, List<Long> dueSoon) {
+        sendReminders(overdue, true);
+        sendReminders(dueSoon, false);
+    }
+    
+    public long getRemindersSent() {
+        return remindersSent.get();
+    }
+    
+    public long getReminderFailures() {
+        return reminderFailures.get();
+    }
+    
+    private void sendReminders(List<Long> borrowingIds, boolean overdue) {
+        if (borrowingIds.isEmpty()) {
+            return;
+        }
+        for (Borrowing borrowing : borrowingRepository.findActiveWithUserAndBookByIdIn(borrowingIds)) {
+            try {
+                if (overdue) {
+                    notificationService.sendOverdueReminderEmail(borrowing.getUser(), borrowing.getBook(), borrowing);
+                } else {
+                    notificationService.sendDueDateReminderEmail(borrowing.getUser(), borrowing.getBook(), borrowing);
+                }
+                remindersSent.incrementAndGet();
+            } catch (Exception e) {
+                reminderFailures.incrementAndGet();
+                System.err.println("Failed to send reminder for borrowing " + borrowing.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.repository.BorrowingRepository;
+import com.enicarthage.library.util.DeadlineHeap;
+import com.enicarthage.library.util.LongIntHashMap;
+import com.enicarthage.library.util.LongObjectHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory schedule of active loans' due dates. Each loan has a due-soon and an overdue timer in
+ * a deadline heap; a once-a-second tick pops the timers that have come due, marks loans overdue
+ * and hands the matching reminders to {@link OverdueReminderSender}, so the overdue count is a
+ * counter read rather than a scan of borrowings. Loaded from the database at startup and kept
+ * current by borrow, return and extend after their transactions commit. Until loading has
+ * finished, callers fall back to the database.
+ */
+@Component
+public class OverdueTracker {
+    
+    private static final long OVERDUE = 0;
+    private static final long DUE_SOON = 1;
+    
+    @Autowired
+    private BorrowingRepository borrowingRepository;
+    
+    @Autowired
+    private OverdueReminderSender reminderSender;
+    
+    @Value("${library.overdue.reminder-lead-hours:24}")
+    private long reminderLeadHours;
+    
+    @Value("${library.overdue.send-reminders:false}")
+    private boolean sendReminders;
+    
+    private final LongObjectHashMap<Loan> loans = new LongObjectHashMap<>(1024);
+    private final DeadlineHeap timers = new DeadlineHeap(2048);
+    private final ReentrantLock lock = new ReentrantLock();
+    private int overdueCount;
+    private volatile boolean loaded;
+    
+    // Loans returned while the startup load was running, which its rows must not bring back
+    private LongIntHashMap removedWhileLoading = new LongIntHashMap();
+    
+    private final AtomicLong overdueFired = new AtomicLong();
+    
+    private static final class Loan {
+        long dueAt;
+        boolean overdue;
+        boolean reminded;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long now = System.currentTimeMillis();
+        List<Object[]> rows = borrowingRepository.findActiveDueDates();
+        lock.lock();
+        try {
+            for (Object[] row : rows) {
+                long borrowingId = (Long) row[0];
+                // Live updates made during the load are newer than these rows
+                if (row[1] == null || loans.containsKey(borrowingId) || removedWhileLoading.containsKey(borrowingId)) {
+                    continue;
+                }
+                // Loans already past a deadline at startup are marked silently, without a burst of emails
+                Loan loan = schedule(borrowingId, toMillis((LocalDateTime) row[1]), now);
+                loan.reminded = loan.dueAt - reminderLeadMillis() <= now;
+                if (loan.dueAt <= now) {
+                    loan.overdue = true;
+                    overdueCount++;
+                }
+            }
+            removedWhileLoading = null;
+            loaded = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    public int getOverdueCount() {
+        lock.lock();
+        try {
+            return overdueCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Starts or reschedules tracking of an active loan once the current transaction commits.
+     */
+    public void track(Long borrowingId, LocalDateTime dueDate) {
+        long dueAt = toMillis(dueDate);
+        afterCommit(() -> {
+            long now = System.currentTimeMillis();
+            lock.lock();
+            try {
+                untrackLocked(borrowingId);
+                schedule(borrowingId, dueAt, now);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+    
+    /**
+     * Stops tracking a loan (returned or deleted) once the current transaction commits.
+     */
+    public void untrack(Long borrowingId) {
+        afterCommit(() -> {
+            lock.lock();
+            try {
+                untrackLocked(borrowingId);
+                if (removedWhileLoading != null) {
+                    removedWhileLoading.put(borrowingId, 1);
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+    
+    @Scheduled(fixedDelayString = "${library.overdue.tick-ms:1000}")
+    public void tick() {
+        long now = System.currentTimeMillis();
+        List<Long> overdue = new ArrayList<>();
+        List<Long> dueSoon = new ArrayList<>();
+        lock.lock();
+        try {
+            while (timers.peekDeadline() <= now) {
+                long deadline = timers.peekDeadline();
+                long timer = timers.poll();
+                long borrowingId = timer >>> 1;
+                Loan loan = loans.get(borrowingId);
+                // Timers of returned or rescheduled loans are dropped here instead of being removed
+                if (loan == null) {
+                    continue;
+                }
+                if ((timer & 1) == OVERDUE && deadline == loan.dueAt && !loan.overdue) {
+                    loan.overdue = true;
+                    overdueCount++;
+                    overdue.add(borrowingId);
+                } else if ((timer & 1) == DUE_SOON && deadline == loan.dueAt - reminderLeadMillis() && !loan.reminded) {
+                    loan.reminded = true;
+                    dueSoon.add(borrowingId);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        overdueFired.addAndGet(overdue.size());
+        
+        if (sendReminders && (!overdue.isEmpty() || !dueSoon.isEmpty())) {
+            reminderSender.send(overdue, dueSoon);
+        }
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            statistics.put("loaded", loaded);
+            statistics.put("trackedLoans", loans.size());
+            statistics.put("overdueLoans", overdueCount);
+            statistics.put("pendingTimers", timers.size());
+        } finally {
+            lock.unlock();
+        }
+        statistics.put("overdueTransitions", overdueFired.get());
+        statistics.put("remindersSent", reminderSender.getRemindersSent());
+        statistics.put("reminderFailures", reminderSender.getReminderFailures());
+        return statistics;
+    }
+    
+    private Loan schedule(long borrowingId, long dueAt, long now) {
+        Loan loan = new Loan();
+        loan.dueAt = dueAt;
+        loans.put(borrowingId, loan);
+        timers.add(dueAt, borrowingId << 1 | OVERDUE);
+        long remindAt = dueAt - reminderLeadMillis();
+        if (remindAt > now) {
+            timers.add(remindAt, borrowingId << 1 | DUE_SOON);
+        }
+        return loan;
+    }
+    
+    private void untrackLocked(long borrowingId) {
+        Loan loan = loans.remove(borrowingId);
+        if (loan != null && loan.overdue) {
+            overdueCount--;
+        }
+    }
+    
+    private long reminderLeadMillis() {
+        return reminderLeadHours * 3_600_000L;
+    }
+    
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+}
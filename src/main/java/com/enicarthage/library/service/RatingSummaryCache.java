@@ -0,0 +1,203 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.repository.BookReviewRepository;
+import com.enicarthage.library.util.LongObjectHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Per-book rating summary: review count, rating sum and a 5-bucket histogram, so a book's average
+ * and distribution are read without loading its reviews. A book is loaded with one grouped count
+ * the first time it is asked for; creating, editing and deleting reviews adjust it once their
+ * transaction commits.
+ */
+@Component
+public class RatingSummaryCache {
+    
+    public static final int MAX_RATING = 5;
+    
+    // Summary layout: count, sum, then the number of 1- to 5-star reviews
+    private static final int COUNT = 0;
+    private static final int SUM = 1;
+    private static final int SIZE = 2 + MAX_RATING;
+    
+    @Autowired
+    private BookReviewRepository bookReviewRepository;
+    
+    private final LongObjectHashMap<Summary> summaries = new LongObjectHashMap<>(1024);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // A load is only stored if no change was applied or committing while it read; otherwise it could
+    // already count a committed review that the pending delta then adds again
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicInteger committing = new AtomicInteger();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    
+    /**
+     * Immutable; a change replaces the book's summary, so a reader can keep the one it got.
+     */
+    public static final class Summary {
+        private final long[] counts;
+        
+        private Summary(long[] counts) {
+            this.counts = counts;
+        }
+        
+        public long getCount() {
+            return counts[COUNT];
+        }
+        
+        public long getSum() {
+            return counts[SUM];
+        }
+        
+        public double getAverage() {
+            return counts[COUNT] == 0 ? 0.0 : (double) counts[SUM] / counts[COUNT];
+        }
+        
+        public long getRatingCount(int rating) {
+            return counts[SUM + rating];
+        }
+    }
+    
+    public Summary get(long bookId) {
+        lock.readLock().lock();
+        try {
+            Summary summary = summaries.get(bookId);
+            if (summary != null) {
+                hits.incrementAndGet();
+                return summary;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        misses.incrementAndGet();
+        boolean quiet = committing.get() == 0;
+        long observed = generation.get();
+        long[] counts = new long[SIZE];
+        for (Object[] row : bookReviewRepository.countByRatingForBook(bookId)) {
+            add(counts, (Integer) row[0], (Long) row[1]);
+        }
+        Summary summary = new Summary(counts);
+        lock.writeLock().lock();
+        try {
+            if (quiet && committing.get() == 0 && generation.get() == observed) {
+                summaries.put(bookId, summary);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return summary;
+    }
+    
+    /**
+     * Records a review of the book changing from one rating to another ({@code null} for created or
+     * deleted), applied once the current transaction commits.
+     */
+    public void recordChange(long bookId, Integer from, Integer to) {
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                generation.incrementAndGet();
+                Summary current = summaries.get(bookId);
+                if (current == null) {
+                    // Not cached: the next read loads the committed state
+                    return;
+                }
+                long[] counts = current.counts.clone();
+                if (from != null) {
+                    add(counts, from, -1);
+                }
+                if (to != null) {
+                    add(counts, to, 1);
+                }
+                summaries.put(bookId, new Summary(counts));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+    
+    /**
+     * Drops every summary once the current transaction commits, for changes that remove reviews
+     * without going through {@link #recordChange} (such as deleting a user).
+     */
+    public void invalidateAll() {
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                generation.incrementAndGet();
+                summaries.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+    
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            statistics.put("cachedBooks", summaries.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        statistics.put("hits", hitCount);
+        statistics.put("misses", misses.get());
+        statistics.put("hitRate", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        return statistics;
+    }
+    
+    private static void add(long[] counts, int rating, long reviews) {
+        counts[COUNT] += reviews;
+        counts[SUM] += rating * reviews;
+        if (rating >= 1 && rating <= MAX_RATING) {
+            counts[SUM + rating] += reviews;
+        }
+    }
+    
+    // Applies a change only if the surrounding transaction commits, and holds off loads from its
+    // beforeCommit until the change is applied
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean counted;
+            
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                committing.incrementAndGet();
+                counted = true;
+            }
+            
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        change.run();
+                    }
+                } finally {
+                    if (counted) {
+                        committing.decrementAndGet();
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,164 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.repository.ReservationRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Expires confirmed holds whose pickup window has passed. Each run reads expired holds oldest
+ * first through the (status, expiry_date) index, library.reservations.sweep-chunk-size at a time,
+ * and handles each chunk in its own READ COMMITTED transaction: lock the books, re-check and
+ * row-lock the holds, expire them with one bulk update and pass each freed copy to the next
+ * reservation in its book's queue.
+ */
+@Service
+public class ReservationExpiryService {
+    
+    @Autowired
+    private ReservationRepository reservationRepository;
+    
+    @Autowired
+    private ReservationService reservationService;
+    
+    @Autowired
+    private BookLockManager bookLockManager;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private TransactionTemplate chunkTransaction;
+    
+    @Value("${library.reservations.sweep-chunk-size:500}")
+    private int chunkSize;
+    
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong promoted = new AtomicLong();
+    private final AtomicLong uncountedCopies = new AtomicLong();
+    private final AtomicLong sweepMillis = new AtomicLong();
+    private final LongAccumulator maxLagMillis = new LongAccumulator(Math::max, 0);
+    private volatile Map<String, Object> lastRun = Map.of();
+    
+    @PostConstruct
+    public void init() {
+        // The re-check after the book locks must see holds collected or cancelled while waiting
+        chunkTransaction = new TransactionTemplate(transactionManager);
+        chunkTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+    
+    @Scheduled(initialDelayString = "${library.reservations.sweep-interval-ms:60000}",
+            fixedDelayString = "${library.reservations.sweep-interval-ms:60000}")
+    public void scheduledSweep() {
+        Map<String, Object> report = expireHolds();
+        if ((Long) report.get("expired") > 0) {
+            System.out.println("Expired " + report.get("expired") + " reservation holds, promoted " + report.get("promoted"));
+        }
+    }
+    
+    public Map<String, Object> expireHolds() {
+        long startedAt = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        long runExpired = 0;
+        long runPromoted = 0;
+        long runUncounted = 0;
+        long runMaxLag = 0;
+        int chunks = 0;
+        int read;
+        do {
+            long[] chunk = chunkTransaction.execute(status -> expireChunk(now));
+            read = (int) chunk[0];
+            runExpired += chunk[1];
+            runPromoted += chunk[2];
+            runMaxLag = Math.max(runMaxLag, chunk[3]);
+            runUncounted += chunk[4];
+            chunks++;
+        } while (read == chunkSize);
+        long elapsed = System.currentTimeMillis() - startedAt;
+        
+        runs.incrementAndGet();
+        expired.addAndGet(runExpired);
+        promoted.addAndGet(runPromoted);
+        uncountedCopies.addAndGet(runUncounted);
+        sweepMillis.addAndGet(elapsed);
+        maxLagMillis.accumulate(runMaxLag);
+        
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("expired", runExpired);
+        report.put("promoted", runPromoted);
+        // Freed copies that could not go back on the shelf because every copy was already available
+        report.put("uncountedCopies", runUncounted);
+        report.put("chunks", chunks);
+        report.put("elapsedMillis", elapsed);
+        report.put("expiredPerSecond", elapsed == 0 ? runExpired * 1000.0 : runExpired * 1000.0 / elapsed);
+        // How long the oldest hold expired in this run had been overdue for expiry
+        report.put("maxLagMillis", runMaxLag);
+        report.put("startedAt", now);
+        lastRun = report;
+        return report;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        long totalExpired = expired.get();
+        long totalMillis = sweepMillis.get();
+        
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("runs", runs.get());
+        statistics.put("expired", totalExpired);
+        statistics.put("promoted", promoted.get());
+        statistics.put("uncountedCopies", uncountedCopies.get());
+        statistics.put("expiredPerSecond", totalMillis == 0 ? 0.0 : totalExpired * 1000.0 / totalMillis);
+        statistics.put("maxLagMillis", maxLagMillis.get());
+        statistics.put("lastRun", lastRun);
+        return statistics;
+    }
+    
+    // {holds read, holds expired, copies promoted, max lag in ms, copies not restocked}
+    private long[] expireChunk(LocalDateTime now) {
+        List<Long> candidates = reservationRepository.findExpiredHoldIds(now, Limit.of(chunkSize));
+        if (candidates.isEmpty()) {
+            return new long[5];
+        }
+        bookLockManager.lockAll(reservationRepository.findBookIdsByIdIn(candidates));
+        
+        // Holds collected or cancelled before the locks were taken drop out here; the rows stay locked
+        // until commit, so exactly these holds are expired and their copies released
+        List<Long> ids = new ArrayList<>(candidates.size());
+        Map<Long, Integer> copiesPerBook = new HashMap<>();
+        long maxLag = 0;
+        for (Object[] row : reservationRepository.findExpiredHoldsByIdIn(candidates, now)) {
+            ids.add((Long) row[0]);
+            copiesPerBook.merge((Long) row[1], 1, Integer::sum);
+            maxLag = Math.max(maxLag, Duration.between((LocalDateTime) row[2], now).toMillis());
+        }
+        if (ids.isEmpty()) {
+            return new long[]{candidates.size(), 0, 0, 0, 0};
+        }
+        
+        int count = reservationRepository.expire(ids, LocalDateTime.now());
+        long chunkPromoted = 0;
+        long chunkUncounted = 0;
+        for (Map.Entry<Long, Integer> entry : copiesPerBook.entrySet()) {
+            int[] released = reservationService.releaseHeldCopies(entry.getKey(), entry.getValue());
+            chunkPromoted += released[0];
+            chunkUncounted += released[1];
+        }
+        return new long[]{candidates.size(), count, chunkPromoted, maxLag, chunkUncounted};
+    }
+}
@@ -0,0 +1,124 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.repository.ReservationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory FIFO of pending reservation ids per book, loaded from the reservations table the first
+ * time a book is touched. Changes are applied after the writing transaction commits. Writers hold
+ * the book's lock from {@link BookLockManager}, which is released only after those changes are
+ * applied, so a loaded queue always matches the table; readers without the lock never block on
+ * the lock-free queues and never load one, falling back to the table instead.
+ */
+@Component
+public class ReservationQueue {
+    
+    @Autowired
+    private ReservationRepository reservationRepository;
+    
+    private final ConcurrentHashMap<Long, ConcurrentLinkedQueue<Long>> queues = new ConcurrentHashMap<>();
+    
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dequeued = new AtomicLong();
+    
+    /**
+     * The book's queue, head first. The caller must hold the book's lock, and must call this before
+     * writing reservations of the book in the same transaction.
+     */
+    public Iterable<Long> waiting(Long bookId) {
+        ConcurrentLinkedQueue<Long> queue = queues.get(bookId);
+        if (queue == null) {
+            loads.incrementAndGet();
+            queue = new ConcurrentLinkedQueue<>(reservationRepository.findPendingIdsByBookId(bookId));
+            queues.put(bookId, queue);
+        }
+        return queue;
+    }
+    
+    public void enqueue(Long bookId, Long reservationId) {
+        afterCommit(() -> {
+            ConcurrentLinkedQueue<Long> queue = queues.get(bookId);
+            if (queue != null) {
+                queue.add(reservationId);
+                enqueued.incrementAndGet();
+            }
+        });
+    }
+    
+    /**
+     * Takes a reservation out of the queue once the current transaction commits. The head, which
+     * is what allocation removes, comes off in constant time.
+     */
+    public void remove(Long bookId, Long reservationId) {
+        afterCommit(() -> {
+            ConcurrentLinkedQueue<Long> queue = queues.get(bookId);
+            if (queue != null && queue.remove(reservationId)) {
+                dequeued.incrementAndGet();
+            }
+        });
+    }
+    
+    /**
+     * 1-based position of a pending reservation, 0 if it is not queued, or -1 if the book's queue
+     * is not loaded.
+     */
+    public int position(Long bookId, Long reservationId) {
+        ConcurrentLinkedQueue<Long> queue = queues.get(bookId);
+        if (queue == null) {
+            return -1;
+        }
+        int position = 1;
+        for (Long queued : queue) {
+            if (queued.equals(reservationId)) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+    
+    /**
+     * Number of pending reservations, or -1 if the book's queue is not loaded.
+     */
+    public int length(Long bookId) {
+        ConcurrentLinkedQueue<Long> queue = queues.get(bookId);
+        return queue != null ? queue.size() : -1;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        long waiting = 0;
+        for (ConcurrentLinkedQueue<Long> queue : queues.values()) {
+            waiting += queue.size();
+        }
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("loadedQueues", queues.size());
+        statistics.put("waiting", waiting);
+        statistics.put("loads", loads.get());
+        statistics.put("enqueued", enqueued.get());
+        statistics.put("dequeued", dequeued.get());
+        return statistics;
+    }
+    
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+}
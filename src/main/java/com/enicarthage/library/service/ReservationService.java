@@ -0,0 +1,255 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.entity.Book;
+import com.enicarthage.library.entity.Reservation;
+import com.enicarthage.library.entity.User;
+import com.enicarthage.library.repository.BookRepository;
+import com.enicarthage.library.repository.ReservationRepository;
+import com.enicarthage.library.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Hold queues for books with no copy on the shelf. A reservation waits as PENDING in its book's
+ * FIFO queue; when a copy comes back, {@link #allocateReturnedCopies} hands it to the head of the
+ * queue (CONFIRMED, held until library.reservations.hold-days have passed) instead of putting it
+ * back on the shelf, and the holder's next borrow of the book takes the held copy.
+ */
+@Service
+public class ReservationService {
+    
+    @Autowired
+    private ReservationRepository reservationRepository;
+    
+    @Autowired
+    private BookRepository bookRepository;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private ReservationQueue reservationQueue;
+    
+    @Autowired
+    private BookLockManager bookLockManager;
+    
+    @Autowired
+    private LoanSummaryCache loanSummaryCache;
+    
+    @Autowired
+    private BookCache bookCache;
+    
+    @Autowired
+    private BookChangeService bookChangeService;
+    
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+    
+    @Value("${library.reservations.hold-days:3}")
+    private int holdDays;
+    
+    @Value("${library.reservations.max-per-user:5}")
+    private int maxReservationsPerUser;
+    
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public Reservation reserveBook(Long bookId, Long userId) {
+        bookLockManager.lock(bookId);
+        
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        Book book = bookRepository.findById(bookId)
+                .orElseThrow(() -> new RuntimeException("Book not found"));
+        
+        if (book.getAvailableCopies() != null && book.getAvailableCopies() > 0) {
+            throw new RuntimeException("Book is available for borrowing");
+        }
+        if (loanSummaryCache.hasBorrowed(userId, bookId)) {
+            throw new RuntimeException("User has already borrowed this book");
+        }
+        if (!reservationRepository.findOpenByUserIdAndBookIdIn(userId, List.of(bookId)).isEmpty()) {
+            throw new RuntimeException("User has already reserved this book");
+        }
+        if (reservationRepository.countOpenByUserId(userId) >= maxReservationsPerUser) {
+            throw new RuntimeException("User has reached maximum reservation limit");
+        }
+        
+        // Loaded before the insert so the new row is not read in and then appended again
+        reservationQueue.waiting(bookId);
+        
+        Reservation reservation = new Reservation();
+        reservation.setUser(user);
+        reservation.setBook(book);
+        reservation.setReservationDate(LocalDateTime.now());
+        reservation.setStatus(Reservation.ReservationStatus.PENDING);
+        
+        Reservation savedReservation = reservationRepository.save(reservation);
+        reservationQueue.enqueue(bookId, savedReservation.getId());
+        return savedReservation;
+    }
+    
+    /**
+     * @return the cancelled reservation, and for a held copy whether it went back on the shelf
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public Map<String, Object> cancelReservation(Long reservationId) {
+        Long bookId = reservationRepository.findBookIdById(reservationId)
+                .orElseThrow(() -> new RuntimeException("Reservation not found"));
+        bookLockManager.lock(bookId);
+        reservationQueue.waiting(bookId);
+        
+        Reservation reservation = reservationRepository.findById(reservationId)
+                .orElseThrow(() -> new RuntimeException("Reservation not found"));
+        
+        Map<String, Object> result = new HashMap<>();
+        if (reservation.getStatus() == Reservation.ReservationStatus.PENDING) {
+            reservationQueue.remove(bookId, reservationId);
+        } else if (reservation.getStatus() == Reservation.ReservationStatus.CONFIRMED) {
+            boolean restocked = releaseHeldCopies(bookId, 1)[1] == 0;
+            result.put("copyRestocked", restocked);
+            if (!restocked) {
+                result.put("warning", "All copies of book " + bookId
+                        + " were already available; the held copy was not added");
+            }
+        } else {
+            throw new RuntimeException("Reservation is not active");
+        }
+        reservation.setStatus(Reservation.ReservationStatus.CANCELLED);
+        result.put("reservation", reservationRepository.save(reservation));
+        return result;
+    }
+    
+    /**
+     * Gives returned copies of a book to the front of its hold queue. Must run in the returning
+     * transaction with the book's lock held.
+     *
+     * @return how many of the copies were allocated; the rest go back on the shelf
+     */
+    public int allocateReturnedCopies(Long bookId, int copies) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiryDate = now.plusDays(holdDays);
+        int allocated = 0;
+        Iterator<Long> waiting = reservationQueue.waiting(bookId).iterator();
+        while (allocated < copies && waiting.hasNext()) {
+            Long reservationId = waiting.next();
+            // Normally the first try succeeds; a row changed behind the queue's back is just dropped
+            if (reservationRepository.confirm(reservationId, expiryDate, now) == 1) {
+                allocated++;
+            }
+            reservationQueue.remove(bookId, reservationId);
+        }
+        return allocated;
+    }
+    
+    /**
+     * Passes copies that were held for reservations which are no longer being collected to the
+     * next in line, putting any that nobody is waiting for back on the shelf.
+     *
+     * @return {copies that went to the next in line, copies not put back because every copy of the
+     *         book was already available}
+     */
+    public int[] releaseHeldCopies(Long bookId, int copies) {
+        int promoted = allocateReturnedCopies(bookId, copies);
+        int remaining = copies - promoted;
+        if (remaining == 0) {
+            return new int[]{promoted, 0};
+        }
+        LocalDateTime now = LocalDateTime.now();
+        int restocked = 0;
+        while (restocked < remaining && bookRepository.incrementAvailableCopies(bookId, now) == 1) {
+            restocked++;
+        }
+        bookCache.invalidate(bookId);
+        bookChangeService.recordUpsert(bookId);
+        bookRepository.findById(bookId).ifPresent(bookSearchIndex::refreshFacets);
+        return new int[]{promoted, remaining - restocked};
+    }
+    
+    /**
+     * Books among the given ones that have a copy held for this user.
+     */
+    public Set<Long> findHeldBookIds(Long userId, Collection<Long> bookIds) {
+        return new HashSet<>(reservationRepository.findHeldBookIds(userId, bookIds));
+    }
+    
+    /**
+     * Closes the user's open reservations for books they have just borrowed. Must run in the
+     * borrowing transaction with the books' locks held.
+     *
+     * @return the books whose copy was being held for the user and so must not be taken from the shelf
+     */
+    public Set<Long> fulfil(Long userId, Collection<Long> bookIds) {
+        Set<Long> held = new HashSet<>();
+        List<Reservation> open = reservationRepository.findOpenByUserIdAndBookIdIn(userId, bookIds);
+        for (Reservation reservation : open) {
+            Long bookId = reservation.getBook().getId();
+            if (reservation.getStatus() == Reservation.ReservationStatus.CONFIRMED) {
+                held.add(bookId);
+            } else {
+                reservationQueue.waiting(bookId);
+                reservationQueue.remove(bookId, reservation.getId());
+            }
+            reservation.setStatus(Reservation.ReservationStatus.FULFILLED);
+        }
+        reservationRepository.saveAll(open);
+        return held;
+    }
+    
+    public Optional<Reservation> getReservationById(Long id) {
+        return reservationRepository.findById(id);
+    }
+    
+    public List<Reservation> getReservationsByUser(Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        return reservationRepository.findByUserOrderByReservationDateDesc(user);
+    }
+    
+    public List<Reservation> getQueue(Long bookId) {
+        return reservationRepository.findPendingByBookId(bookId);
+    }
+    
+    /**
+     * 1-based position of a pending reservation in its book's queue, 0 if it is not waiting.
+     */
+    public int getQueuePosition(Reservation reservation) {
+        if (reservation.getStatus() != Reservation.ReservationStatus.PENDING) {
+            return 0;
+        }
+        Long bookId = reservation.getBook().getId();
+        int position = reservationQueue.position(bookId, reservation.getId());
+        if (position >= 0) {
+            return position;
+        }
+        return (int) reservationRepository.countPendingAhead(bookId, reservation.getReservationDate(),
+                reservation.getId()) + 1;
+    }
+    
+    public Map<String, Object> getReservationStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        Map<String, Long> byStatus = new HashMap<>();
+        for (Reservation.ReservationStatus status : Reservation.ReservationStatus.values()) {
+            byStatus.put(status.name(), 0L);
+        }
+        for (Object[] row : reservationRepository.countByStatus()) {
+            if (row[0] != null) {
+                byStatus.put(((Reservation.ReservationStatus) row[0]).name(), (Long) row[1]);
+            }
+        }
+        statistics.put("reservationsByStatus", byStatus);
+        statistics.put("queues", reservationQueue.getStatistics());
+        return statistics;
+    }
+}
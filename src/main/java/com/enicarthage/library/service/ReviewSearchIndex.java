@@ -0,0 +1,149 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.entity.BookReview;
+import com.enicarthage.library.search.InvertedIndex;
+import com.enicarthage.library.search.TextAnalyzer;
+import com.enicarthage.library.util.LongIntHashMap;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+
+/**
+ * Full-text index over review bodies, using the same BM25 engine as the catalog search. Each
+ * review's rating and verification flag are kept beside the index so searches can filter on them
+ * while ranking. Review writes update it once their transaction commits.
+ */
+@Component
+public class ReviewSearchIndex {
+    
+    private static final int REVIEW_WEIGHT = 1;
+    private static final int VERIFIED = 8;
+    
+    private final InvertedIndex index = new InvertedIndex();
+    
+    // reviewId -> rating, plus VERIFIED when the review is verified; always taken before the index's own lock
+    private final LongIntHashMap attributes = new LongIntHashMap(1024);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    public void index(BookReview review) {
+        if (review.getId() == null) {
+            return;
+        }
+        InvertedIndex.Document document = new InvertedIndex.Document()
+                .field(review.getReview(), REVIEW_WEIGHT);
+        int rating = review.getRating() != null ? review.getRating() : 0;
+        int flags = Boolean.TRUE.equals(review.getIsVerified()) ? rating | VERIFIED : rating;
+        lock.writeLock().lock();
+        try {
+            attributes.put(review.getId(), flags);
+            index.put(review.getId(), document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(long reviewId) {
+        lock.writeLock().lock();
+        try {
+            attributes.remove(reviewId);
+            index.remove(reviewId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            attributes.clear();
+            index.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Indexes the review, or drops it when {@code deleted}, once the current transaction commits.
+     */
+    public void recordChange(BookReview review, boolean deleted) {
+        Long reviewId = review.getId();
+        afterCommit(deleted ? () -> remove(reviewId) : () -> index(review));
+    }
+    
+    /**
+     * Drops reviews deleted along with their book or user once the current transaction commits.
+     */
+    public void recordRemovals(List<Long> reviewIds) {
+        if (reviewIds.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                for (Long reviewId : reviewIds) {
+                    attributes.remove(reviewId);
+                    index.remove(reviewId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+    
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+    
+    /**
+     * Ranked search over review text. Every query term must match, the last one as a prefix.
+     *
+     * @param minRating lowest rating to include, or null
+     * @param maxRating highest rating to include, or null
+     * @param verified only verified (true) or unverified (false) reviews, or null for both
+     */
+    public InvertedIndex.SearchHits search(String query, Integer minRating, Integer maxRating, Boolean verified,
+                                           int offset, int limit) {
+        List<String> terms = TextAnalyzer.tokenize(query);
+        int low = minRating != null ? minRating : Integer.MIN_VALUE;
+        int high = maxRating != null ? maxRating : Integer.MAX_VALUE;
+        LongPredicate filter = null;
+        if (minRating != null || maxRating != null || verified != null) {
+            filter = reviewId -> {
+                int flags = attributes.get(reviewId, -1);
+                if (flags < 0) {
+                    return false;
+                }
+                int rating = flags & ~VERIFIED;
+                return rating >= low && rating <= high
+                        && (verified == null || verified == ((flags & VERIFIED) != 0));
+            };
+        }
+        lock.readLock().lock();
+        try {
+            return index.search(terms, true, filter, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public int size() {
+        return index.size();
+    }
+    
+    public int termCount() {
+        return index.termCount();
+    }
+}
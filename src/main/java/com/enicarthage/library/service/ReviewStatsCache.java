@@ -0,0 +1,129 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.repository.BookReviewRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snapshot of the review statistics shown on the dashboard, computed with a single grouped query
+ * over (rating, verified). Review writes mark it stale once they commit, and it is also retaken
+ * after library.reviews.stats-ttl-ms to pick up changes made outside the services; otherwise every
+ * read returns the same snapshot.
+ */
+@Component
+public class ReviewStatsCache {
+    
+    @Autowired
+    private BookReviewRepository bookReviewRepository;
+    
+    @Value("${library.reviews.stats-ttl-ms:30000}")
+    private long ttlMs;
+    
+    private volatile Snapshot snapshot;
+    
+    // Bumped on every committed review change; a snapshot taken before the last bump is stale
+    private final AtomicLong generation = new AtomicLong();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    
+    private static final class Snapshot {
+        final Map<String, Object> statistics;
+        final long generation;
+        final long takenAt;
+        
+        Snapshot(Map<String, Object> statistics, long generation, long takenAt) {
+            this.statistics = statistics;
+            this.generation = generation;
+            this.takenAt = takenAt;
+        }
+    }
+    
+    /**
+     * The current statistics. The returned map is shared and unmodifiable.
+     */
+    public Map<String, Object> get() {
+        Snapshot current = snapshot;
+        long now = System.nanoTime();
+        if (current != null && current.generation == generation.get() && now - current.takenAt < ttlMs * 1_000_000L) {
+            hits.incrementAndGet();
+            return current.statistics;
+        }
+        
+        refreshes.incrementAndGet();
+        long observed = generation.get();
+        Map<String, Object> statistics = compute();
+        if (generation.get() == observed) {
+            snapshot = new Snapshot(statistics, observed, now);
+        }
+        return statistics;
+    }
+    
+    /**
+     * Marks the snapshot stale once the current transaction commits.
+     */
+    public void invalidate() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            generation.incrementAndGet();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                generation.incrementAndGet();
+            }
+        });
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("hits", hits.get());
+        statistics.put("refreshes", refreshes.get());
+        return statistics;
+    }
+    
+    private Map<String, Object> compute() {
+        long total = 0;
+        long verified = 0;
+        long unverified = 0;
+        long ratingSum = 0;
+        Map<Integer, Long> reviewsByRating = new HashMap<>();
+        for (int i = 1; i <= RatingSummaryCache.MAX_RATING; i++) {
+            reviewsByRating.put(i, 0L);
+        }
+        for (Object[] row : bookReviewRepository.countByRatingAndVerified()) {
+            Integer rating = (Integer) row[0];
+            Boolean isVerified = (Boolean) row[1];
+            long count = (Long) row[2];
+            total += count;
+            if (isVerified != null) {
+                if (isVerified) {
+                    verified += count;
+                } else {
+                    unverified += count;
+                }
+            }
+            if (rating != null) {
+                ratingSum += rating * count;
+                reviewsByRating.merge(rating, count, Long::sum);
+            }
+        }
+        
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("totalReviews", total);
+        statistics.put("verifiedReviews", verified);
+        statistics.put("unverifiedReviews", unverified);
+        statistics.put("reviewsByRating", Collections.unmodifiableMap(reviewsByRating));
+        statistics.put("overallAverageRating", total == 0 ? 0.0 : Math.round((double) ratingSum / total * 10.0) / 10.0);
+        return Collections.unmodifiableMap(statistics);
+    }
+}
@@ -1,6 +1,7 @@
 package com.enicarthage.library.service;
 
 import com.enicarthage.library.entity.User;
+import com.enicarthage.library.repository.BookReviewRepository;
 import com.enicarthage.library.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -22,6 +23,18 @@ public class UserService implements UserDetailsService {
     @Autowired
     private PasswordEncoder passwordEncoder;
     
+    @Autowired
+    private RatingSummaryCache ratingSummaryCache;
+    
+    @Autowired
+    private ReviewStatsCache reviewStatsCache;
+    
+    @Autowired
+    private BookReviewRepository bookReviewRepository;
+    
+    @Autowired
+    private ReviewSearchIndex reviewSearchIndex;
+    
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         User user = userRepository.findByUsername(username)
@@ -82,7 +95,12 @@ public class UserService implements UserDetailsService {
     public void deleteUser(Long id) {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        // The user's reviews go with them
+        List<Long> reviewIds = bookReviewRepository.findIdsByUserId(id);
         userRepository.delete(user);
+        reviewSearchIndex.recordRemovals(reviewIds);
+        ratingSummaryCache.invalidateAll();
+        reviewStatsCache.invalidate();
     }
     
     public List<User> getAllUsers() {
@@ -0,0 +1,276 @@
+package com.enicarthage.library.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Size- and TTL-bounded read-through cache using the W-TinyLFU policy: new entries land in a small
+ * LRU window, and an entry leaving the window only displaces the main region's LRU victim if a
+ * frequency sketch says it has been requested more often. One-off scans therefore cannot flush the
+ * popular entries out of the cache.
+ */
+public class BoundedCache<K, V> {
+    
+    private final int maximumSize;
+    private final int windowSize;
+    private final long ttlNanos;
+    
+    // access-ordered, eldest first
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    // Keys being loaded; invalidating one marks only its own loads stale, so they are not cached
+    private final Map<K, Load> loading = new HashMap<>();
+    // Bumped by invalidateAll, which makes every load in flight stale
+    private final AtomicLong generation = new AtomicLong();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    
+    public BoundedCache(int maximumSize, long ttlMillis) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+    
+    /**
+     * Returns the cached value, or loads, caches and returns it. The loader runs outside the lock;
+     * null results are returned but not cached.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        Load load;
+        long keyGeneration;
+        long loadGeneration;
+        lock.lock();
+        try {
+            load = loading.computeIfAbsent(key, k -> new Load());
+            load.loaders++;
+            keyGeneration = load.generation;
+            loadGeneration = generation.get();
+        } finally {
+            lock.unlock();
+        }
+        V loaded = null;
+        try {
+            loaded = loader.apply(key);
+        } finally {
+            lock.lock();
+            try {
+                if (loaded != null && load.generation == keyGeneration && generation.get() == loadGeneration) {
+                    put(key, loaded);
+                }
+                if (--load.loaders == 0) {
+                    loading.remove(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return loaded;
+    }
+    
+    public V getIfPresent(K key) {
+        lock.lock();
+        try {
+            sketch.increment(key);
+            Entry<V> entry = window.get(key);
+            if (entry == null) {
+                entry = main.get(key);
+            }
+            if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+                window.remove(key);
+                main.remove(key);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            Load load = loading.get(key);
+            if (load != null) {
+                load.generation++;
+            }
+            if (window.remove(key) != null || main.remove(key) != null) {
+                invalidations.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        lock.lock();
+        try {
+            invalidations.addAndGet(window.size() + main.size());
+            window.clear();
+            main.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int size() {
+        lock.lock();
+        try {
+            return window.size() + main.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+        
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("size", size());
+        statistics.put("maximumSize", maximumSize);
+        statistics.put("hits", hitCount);
+        statistics.put("misses", missCount);
+        statistics.put("hitRate", requests == 0 ? 0.0 : (double) hitCount / requests);
+        statistics.put("evictions", evictions.get());
+        statistics.put("expirations", expirations.get());
+        statistics.put("invalidations", invalidations.get());
+        return statistics;
+    }
+    
+    // Caller holds the lock
+    private void put(K key, V value) {
+        Entry<V> entry = new Entry<>(value, System.nanoTime() + ttlNanos);
+        if (main.containsKey(key)) {
+            main.put(key, entry);
+            return;
+        }
+        window.put(key, entry);
+        if (window.size() > windowSize) {
+            Map.Entry<K, Entry<V>> candidate = removeEldest(window);
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+    
+    private void admit(K key, Entry<V> entry) {
+        if (main.size() < maximumSize - windowSize) {
+            main.put(key, entry);
+            return;
+        }
+        K victim = main.isEmpty() ? null : main.keySet().iterator().next();
+        if (victim != null && sketch.frequency(key) > sketch.frequency(victim)) {
+            main.remove(victim);
+            main.put(key, entry);
+        }
+        evictions.incrementAndGet();
+    }
+    
+    private Map.Entry<K, Entry<V>> removeEldest(LinkedHashMap<K, Entry<V>> region) {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = region.entrySet().iterator();
+        Map.Entry<K, Entry<V>> eldest = iterator.next();
+        Map.Entry<K, Entry<V>> copy = Map.entry(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        return copy;
+    }
+    
+    private static final class Load {
+        int loaders;
+        long generation;
+    }
+    
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+        
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+    /**
+     * Count-min sketch with four rows of counters saturating at 15. All counters are halved once
+     * the number of increments reaches ten times the cache size, so old popularity fades out.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+        
+        FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+            this.counters = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * Math.max(16, maximumSize);
+        }
+        
+        void increment(Object key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = indexOf(hash, row);
+                if (counters[row][index] < 15) {
+                    counters[row][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+        
+        int frequency(Object key) {
+            int hash = key.hashCode();
+            int frequency = Integer.MAX_VALUE;
+            for (int row = 0; row < SEEDS.length; row++) {
+                frequency = Math.min(frequency, counters[row][indexOf(hash, row)]);
+            }
+            return frequency;
+        }
+        
+        private int indexOf(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+        
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
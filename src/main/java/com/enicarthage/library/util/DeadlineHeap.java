@@ -0,0 +1,90 @@
+package com.enicarthage.library.util;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of (deadline, payload) pairs held in two parallel long arrays, so scheduling a
+ * timer allocates nothing. Entries cannot be removed; owners drop stale ones when they are polled.
+ * Not thread-safe.
+ */
+public class DeadlineHeap {
+    
+    private long[] deadlines;
+    private long[] payloads;
+    private int size;
+    
+    public DeadlineHeap(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        deadlines = new long[capacity];
+        payloads = new long[capacity];
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public void add(long deadline, long payload) {
+        if (size == deadlines.length) {
+            deadlines = Arrays.copyOf(deadlines, size << 1);
+            payloads = Arrays.copyOf(payloads, size << 1);
+        }
+        int index = size++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (deadlines[parent] <= deadline) {
+                break;
+            }
+            deadlines[index] = deadlines[parent];
+            payloads[index] = payloads[parent];
+            index = parent;
+        }
+        deadlines[index] = deadline;
+        payloads[index] = payload;
+    }
+    
+    /**
+     * Earliest deadline, or Long.MAX_VALUE when empty.
+     */
+    public long peekDeadline() {
+        return size == 0 ? Long.MAX_VALUE : deadlines[0];
+    }
+    
+    /**
+     * Removes the earliest entry and returns its payload; read {@link #peekDeadline()} first if the
+     * deadline is needed.
+     */
+    public long poll() {
+        if (size == 0) {
+            throw new IllegalStateException("Heap is empty");
+        }
+        long payload = payloads[0];
+        size--;
+        long deadline = deadlines[size];
+        long moved = payloads[size];
+        int index = 0;
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && deadlines[child + 1] < deadlines[child]) {
+                child++;
+            }
+            if (deadline <= deadlines[child]) {
+                break;
+            }
+            deadlines[index] = deadlines[child];
+            payloads[index] = payloads[child];
+            index = child;
+        }
+        deadlines[index] = deadline;
+        payloads[index] = moved;
+        return payload;
+    }
+    
+    public void clear() {
+        size = 0;
+    }
+}
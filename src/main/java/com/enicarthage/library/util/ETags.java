@@ -0,0 +1,70 @@
+package com.enicarthage.library.util;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conditional GET support. Controllers compute a strong ETag from cheap version data (an entity's
+ * version column or a collection fingerprint) and check If-None-Match before loading or
+ * serializing the body, so an unchanged resource costs a 304 with no payload.
+ */
+public final class ETags {
+    
+    private static final AtomicLong conditionalRequests = new AtomicLong();
+    private static final AtomicLong notModified = new AtomicLong();
+    
+    private ETags() {
+    }
+    
+    public static String of(Object... parts) {
+        StringBuilder etag = new StringBuilder("\"");
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                etag.append('-');
+            }
+            etag.append(parts[i]);
+        }
+        return etag.append('"').toString();
+    }
+    
+    /**
+     * True if the If-None-Match header lists the given ETag (or is "*"). Per RFC 9110 the
+     * comparison is weak, so a W/ prefix added by a proxy still matches.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        conditionalRequests.incrementAndGet();
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                notModified.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+    
+    public static Map<String, Object> getStatistics() {
+        long conditional = conditionalRequests.get();
+        long hits = notModified.get();
+        
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("conditionalRequests", conditional);
+        statistics.put("notModified", hits);
+        statistics.put("notModifiedRate", conditional == 0 ? 0.0 : (double) hits / conditional);
+        return statistics;
+    }
+}
@@ -0,0 +1,102 @@
+package com.enicarthage.library.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes rows of column values as CSV (with a header line) or NDJSON, one row at a time, through
+ * a buffered writer. Nothing is retained between rows.
+ */
+public class ExportWriter {
+    
+    public static final String CSV = "csv";
+    public static final String NDJSON = "ndjson";
+    
+    private final Writer writer;
+    private final String format;
+    private final String[] columns;
+    private final ObjectMapper objectMapper;
+    private long rows;
+    
+    public ExportWriter(OutputStream out, String format, String[] columns, ObjectMapper objectMapper) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        this.format = format(format);
+        this.columns = columns;
+        this.objectMapper = objectMapper;
+        if (CSV.equals(this.format)) {
+            writeCsvLine(columns);
+        }
+    }
+    
+    public void write(Object[] row) throws IOException {
+        if (CSV.equals(format)) {
+            writeCsvLine(row);
+        } else {
+            Map<String, Object> object = new LinkedHashMap<>();
+            for (int i = 0; i < columns.length; i++) {
+                object.put(columns[i], row[i]);
+            }
+            writer.write(objectMapper.writeValueAsString(object));
+            writer.write('\n');
+        }
+        rows++;
+    }
+    
+    public long getRows() {
+        return rows;
+    }
+    
+    public void flush() throws IOException {
+        writer.flush();
+    }
+    
+    /**
+     * Normalizes a requested format, rejecting unknown ones before any output is written.
+     */
+    public static String format(String requested) {
+        String format = requested.trim().toLowerCase();
+        if (!CSV.equals(format) && !NDJSON.equals(format)) {
+            throw new IllegalArgumentException("Unsupported export format: " + requested);
+        }
+        return format;
+    }
+    
+    public static String contentType(String format) {
+        return CSV.equals(format) ? "text/csv" : "application/x-ndjson";
+    }
+    
+    private void writeCsvLine(Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] != null) {
+                writeCsvField(values[i].toString());
+            }
+        }
+        writer.write("\r\n");
+    }
+    
+    private void writeCsvField(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
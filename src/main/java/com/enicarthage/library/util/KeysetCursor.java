@@ -0,0 +1,113 @@
+package com.enicarthage.library.util;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Opaque continuation tokens for keyset (seek) pagination. A token carries the sort it was issued
+ * for plus the key values of the last row returned, so the next page is a range scan on an index
+ * instead of an OFFSET that re-reads every skipped row.
+ */
+public final class KeysetCursor {
+    
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    
+    private KeysetCursor() {
+    }
+    
+    /**
+     * Resolves the scroll position for a request: the first page when no cursor is given, otherwise
+     * the position encoded in the cursor. Keys are parsed back with the whitelisted parsers, and a
+     * cursor issued for a different sort is rejected.
+     */
+    public static ScrollPosition position(String cursor, String sortBy, Sort.Direction direction,
+                                          Map<String, Function<String, Object>> keyParsers) {
+        if (cursor == null || cursor.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+        
+        String decoded;
+        try {
+            decoded = new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+        String[] parts = decoded.split("&");
+        if (!parts[0].equals(header(sortBy, direction))) {
+            throw new RuntimeException("Cursor was issued for a different sort order");
+        }
+        
+        Map<String, Object> keys = new HashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            int separator = parts[i].indexOf('=');
+            String key = separator > 0 ? parts[i].substring(0, separator) : parts[i];
+            Function<String, Object> parser = keyParsers.get(key);
+            if (parser == null || separator < 0) {
+                throw new RuntimeException("Invalid cursor");
+            }
+            try {
+                keys.put(key, parser.apply(URLDecoder.decode(parts[i].substring(separator + 1), StandardCharsets.UTF_8)));
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Invalid cursor");
+            }
+        }
+        if (!keys.containsKey(sortBy) || !keys.containsKey("id")) {
+            throw new RuntimeException("Invalid cursor");
+        }
+        return ScrollPosition.forward(keys);
+    }
+    
+    /**
+     * Sort on the requested key with the id as tie-breaker, so every row has a unique position.
+     */
+    public static Sort sort(String sortBy, Sort.Direction direction) {
+        Sort sort = Sort.by(direction, sortBy);
+        return "id".equals(sortBy) ? sort : sort.and(Sort.by(direction, "id"));
+    }
+    
+    /**
+     * Slice-style response: the rows, whether more exist, and the token for the next page. No total
+     * is computed, so no count query is issued.
+     */
+    public static Map<String, Object> slice(Window<?> window, String sortBy, Sort.Direction direction) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("content", window.getContent());
+        response.put("numberOfElements", window.size());
+        response.put("hasNext", window.hasNext());
+        response.put("nextCursor", window.hasNext() && !window.isEmpty()
+                ? encode(window.positionAt(window.size() - 1), sortBy, direction) : null);
+        response.put("sortBy", sortBy);
+        response.put("sortDir", direction.name().toLowerCase());
+        return response;
+    }
+    
+    private static String encode(ScrollPosition position, String sortBy, Sort.Direction direction) {
+        StringBuilder token = new StringBuilder(header(sortBy, direction));
+        for (Map.Entry<String, Object> key : ((KeysetScrollPosition) position).getKeys().entrySet()) {
+            // A null key has no place in the seek order, so the rows after it could not be reached
+            if (key.getValue() == null) {
+                throw new RuntimeException("Cannot page by " + sortBy + ": some rows have no " + key.getKey()
+                        + " value. Sort by another field");
+            }
+            token.append('&').append(key.getKey()).append('=')
+                    .append(URLEncoder.encode(String.valueOf(key.getValue()), StandardCharsets.UTF_8));
+        }
+        return ENCODER.encodeToString(token.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String header(String sortBy, Sort.Direction direction) {
+        return sortBy + ":" + direction.name();
+    }
+}
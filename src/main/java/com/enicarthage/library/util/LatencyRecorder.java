@@ -0,0 +1,56 @@
+package com.enicarthage.library.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent latency samples in a ring buffer and reports percentiles on demand.
+ * Recording is lock-free; a snapshot may mix samples written while it is taken, which is fine
+ * for monitoring.
+ */
+public class LatencyRecorder {
+    
+    private final long[] samples;
+    private final AtomicLong count = new AtomicLong();
+    
+    public LatencyRecorder() {
+        this(1024);
+    }
+    
+    public LatencyRecorder(int capacity) {
+        this.samples = new long[capacity];
+    }
+    
+    public void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples[(int) (n % samples.length)] = nanos;
+    }
+    
+    public long getCount() {
+        return count.get();
+    }
+    
+    public Map<String, Object> snapshot() {
+        long total = count.get();
+        int filled = (int) Math.min(total, samples.length);
+        long[] sorted = Arrays.copyOf(samples, filled);
+        Arrays.sort(sorted);
+        
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", total);
+        snapshot.put("p50Micros", percentile(sorted, 0.50));
+        snapshot.put("p99Micros", percentile(sorted, 0.99));
+        snapshot.put("maxMicros", filled == 0 ? 0.0 : sorted[filled - 1] / 1000.0);
+        return snapshot;
+    }
+    
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1000.0;
+    }
+}
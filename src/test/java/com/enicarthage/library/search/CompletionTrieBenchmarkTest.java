@@ -0,0 +1,89 @@
+package com.enicarthage.library.search;
+
+import com.enicarthage.library.util.LatencyRecorder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Memory and latency of /books/suggest over a synthetic catalog. Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class CompletionTrieBenchmarkTest {
+    
+    private static final int BOOKS = 100_000;
+    private static final int QUERIES = 50_000;
+    private static final String[] CATEGORIES = {"TITLE", "AUTHOR", "PUBLISHER"};
+    private static final String[] WORDS = {
+            "algorithms", "analysis", "applied", "architecture", "art", "basic", "calculus", "chemistry",
+            "compilers", "computer", "concepts", "data", "database", "design", "digital", "discrete",
+            "distributed", "economics", "electronics", "engineering", "foundations", "functional",
+            "geometry", "graph", "guide", "history", "introduction", "java", "learning", "linear",
+            "logic", "machine", "mathematics", "mechanics", "modern", "networks", "numerical",
+            "operating", "optimization", "patterns", "physics", "principles", "probability",
+            "programming", "quantum", "security", "signals", "software", "statistics", "structures",
+            "systems", "theory", "thermodynamics", "topology", "vision"};
+    private static final String[] NAMES = {
+            "ahmed", "amira", "ben", "cormen", "dijkstra", "fatma", "hamdi", "karim", "knuth", "leila",
+            "mansour", "meriem", "nadia", "sami", "sedgewick", "tanenbaum", "trabelsi", "yasmine"};
+    private static final String[] PUBLISHERS = {
+            "addison wesley", "cambridge press", "elsevier", "mit press", "oreilly", "pearson", "springer", "wiley"};
+    
+    @Test
+    void suggestMemoryAndLatency() {
+        Random random = new Random(42);
+        long heapBefore = usedHeap();
+        CompletionTrie trie = new CompletionTrie();
+        for (long id = 1; id <= BOOKS; id++) {
+            String title = pick(random, WORDS) + " " + pick(random, WORDS) + " " + pick(random, WORDS) + " " + id % 997;
+            String author = pick(random, NAMES) + " " + pick(random, NAMES);
+            trie.put(id, CATEGORIES, new String[] {title, author, pick(random, PUBLISHERS)});
+            // Skewed popularity, as borrow counts are
+            trie.addWeight(id, (int) (1000 / (1 + random.nextInt(1000))));
+        }
+        long heapUsed = usedHeap() - heapBefore;
+        
+        LatencyRecorder latency = new LatencyRecorder(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            String word = pick(random, i % 3 == 0 ? NAMES : WORDS);
+            String prefix = word.substring(0, 1 + random.nextInt(Math.min(4, word.length())));
+            long start = System.nanoTime();
+            List<CompletionTrie.Completion> completions = trie.complete(prefix, 10);
+            latency.record(System.nanoTime() - start);
+            assertFalse(completions.isEmpty(), "no completion for " + prefix);
+            for (int j = 1; j < completions.size(); j++) {
+                assertTrue(completions.get(j - 1).getWeight() >= completions.get(j).getWeight(), "not ranked: " + prefix);
+            }
+        }
+        
+        Map<String, Object> statistics = trie.getStatistics();
+        Map<String, Object> snapshot = latency.snapshot();
+        System.out.printf("suggest over %d books: %s entries, %s nodes, ~%d MB estimated, ~%d MB measured heap; "
+                        + "p50 %s us, p99 %s us, max %s us%n",
+                BOOKS, statistics.get("entries"), statistics.get("nodes"),
+                (Long) statistics.get("estimatedBytes") >> 20, heapUsed >> 20,
+                snapshot.get("p50Micros"), snapshot.get("p99Micros"), snapshot.get("maxMicros"));
+        
+        // Generous bounds so the run only fails on a real regression, not a slow machine
+        assertTrue((Double) snapshot.get("p99Micros") < 5_000, "p99 latency " + snapshot.get("p99Micros") + " us");
+        assertTrue((Long) statistics.get("estimatedBytes") < 512L << 20, "estimated size " + statistics.get("estimatedBytes"));
+    }
+    
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,87 @@
+package com.enicarthage.library.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.enicarthage.library.service.BookLockManagerTest.begin;
+import static com.enicarthage.library.service.BookLockManagerTest.complete;
+import static com.enicarthage.library.service.BookLockManagerTest.newLockManager;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Circulation throughput with one global lock versus striped per-book locks, in process. Each
+ * operation holds its lock while parked for a fixed time, standing in for the transaction's round
+ * trips to the database, and a fifth of the catalog's titles get most of the traffic. There is no
+ * baseline with database row locks only, which needs a MySQL server. Run with
+ * {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class BookLockBenchmarkTest {
+    
+    private static final int THREADS = 64;
+    private static final int BOOKS = 2000;
+    private static final int HOT_BOOKS = 400;
+    private static final long HOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long RUN_NANOS = TimeUnit.SECONDS.toNanos(2);
+    
+    @Test
+    void stripedLocksOutperformGlobalLock() throws Exception {
+        double global = run("global (1 stripe)", newLockManager(1, 60_000));
+        run("16 stripes", newLockManager(16, 60_000));
+        double striped = run("256 stripes", newLockManager(256, 60_000));
+        
+        assertTrue(striped > global * 4, "256 stripes " + striped + " ops/s vs global " + global + " ops/s");
+    }
+    
+    private double run(String name, BookLockManager lockManager) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        LongAdder operations = new LongAdder();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long deadline = System.nanoTime() + RUN_NANOS;
+                    while (System.nanoTime() < deadline) {
+                        // 80% of requests go to the hot titles
+                        long bookId = 1 + (random.nextInt(5) < 4 ? random.nextInt(HOT_BOOKS) : random.nextInt(BOOKS));
+                        begin();
+                        lockManager.lock(bookId);
+                        LockSupport.parkNanos(HOLD_NANOS);
+                        complete(TransactionSynchronization.STATUS_COMMITTED);
+                        operations.increment();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        double throughput = operations.sum() / (RUN_NANOS / 1e9);
+        Map<String, Object> statistics = lockManager.getStatistics();
+        System.out.printf("%-18s %10.0f ops/s  contended %s of %s, average wait %.1f us, average hold %.1f us%n",
+                name, throughput, statistics.get("contended"), statistics.get("acquisitions"),
+                statistics.get("averageWaitMicros"), statistics.get("averageHoldMicros"));
+        return throughput;
+    }
+}
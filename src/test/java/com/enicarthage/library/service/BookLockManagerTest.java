@@ -0,0 +1,173 @@
+package com.enicarthage.library.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookLockManagerTest {
+    
+    private BookLockManager lockManager;
+    
+    @BeforeEach
+    void setUp() {
+        lockManager = newLockManager(256, 200);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+    
+    @Test
+    void stripeCountIsRoundedUpToPowerOfTwo() {
+        assertEquals(256, stripes(newLockManager(256, 200)));
+        assertEquals(256, stripes(newLockManager(200, 200)));
+        assertEquals(2, stripes(newLockManager(2, 200)));
+        assertEquals(1, stripes(newLockManager(1, 200)));
+    }
+    
+    @Test
+    void sequentialIdsSpreadEvenlyOverStripes() {
+        int[] counts = new int[256];
+        for (long bookId = 1; bookId <= 256 * 64; bookId++) {
+            counts[stripeOf(lockManager, bookId)]++;
+        }
+        for (int count : counts) {
+            // 64 expected per stripe
+            assertTrue(count >= 32 && count <= 128, "uneven stripe load " + count);
+        }
+    }
+    
+    @Test
+    void lockOutsideTransactionIsRejected() {
+        assertThrows(IllegalStateException.class, () -> lockManager.lock(1L));
+    }
+    
+    @Test
+    void lockIsHeldUntilTransactionCompletes() throws Exception {
+        begin();
+        lockManager.lock(1L);
+        
+        RuntimeException busy = onOtherThread(() -> {
+            begin();
+            try {
+                lockManager.lock(1L);
+                return null;
+            } catch (RuntimeException e) {
+                return e;
+            } finally {
+                complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        });
+        assertEquals("Book is busy, please try again", busy.getMessage());
+        
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertNull(onOtherThread(() -> {
+            begin();
+            lockManager.lock(1L);
+            complete(TransactionSynchronization.STATUS_COMMITTED);
+            return null;
+        }));
+        
+        Map<String, Object> statistics = lockManager.getStatistics();
+        assertEquals(2L, statistics.get("acquisitions"));
+        assertEquals(1L, statistics.get("contended"));
+        assertEquals(1L, statistics.get("timeouts"));
+    }
+    
+    @Test
+    void rollbackReleasesLock() throws Exception {
+        begin();
+        lockManager.lock(7L);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        
+        assertNull(onOtherThread(() -> {
+            begin();
+            lockManager.lock(7L);
+            complete(TransactionSynchronization.STATUS_COMMITTED);
+            return null;
+        }));
+        assertEquals(0L, lockManager.getStatistics().get("contended"));
+    }
+    
+    @Test
+    void lockAllTakesEachStripeOnce() {
+        long sameStripe = 2;
+        while (stripeOf(lockManager, sameStripe) != stripeOf(lockManager, 1L)) {
+            sameStripe++;
+        }
+        begin();
+        lockManager.lockAll(List.of(1L, sameStripe, 1L));
+        assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(1L, lockManager.getStatistics().get("acquisitions"));
+    }
+    
+    @Test
+    void holdTimeIsMeasuredUntilCompletion() throws Exception {
+        begin();
+        lockManager.lock(3L);
+        Thread.sleep(20);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        
+        Map<String, Object> statistics = lockManager.getStatistics();
+        assertTrue((Double) statistics.get("averageHoldMicros") >= 20_000, "average hold " + statistics);
+        assertTrue((Long) statistics.get("maxHoldMicros") >= 20_000, "max hold " + statistics);
+    }
+    
+    static BookLockManager newLockManager(int stripeCount, long waitTimeoutMs) {
+        BookLockManager manager = new BookLockManager();
+        ReflectionTestUtils.setField(manager, "stripeCount", stripeCount);
+        ReflectionTestUtils.setField(manager, "waitTimeoutMs", waitTimeoutMs);
+        manager.init();
+        return manager;
+    }
+    
+    // Stands in for the transaction manager: opens synchronization on this thread
+    static void begin() {
+        TransactionSynchronizationManager.initSynchronization();
+    }
+    
+    // Ends it the way the transaction manager does after commit or rollback
+    static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(status);
+        }
+    }
+    
+    private static int stripes(BookLockManager manager) {
+        return (Integer) manager.getStatistics().get("stripes");
+    }
+    
+    private static int stripeOf(BookLockManager manager, long bookId) {
+        return (Integer) ReflectionTestUtils.invokeMethod(manager, "stripe", bookId);
+    }
+    
+    private static <T> T onOtherThread(Callable<T> task) throws Exception {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,205 @@
+package com.enicarthage.library.service;
+
+import com.enicarthage.library.entity.Book;
+import com.enicarthage.library.entity.Borrowing;
+import com.enicarthage.library.entity.User;
+import com.enicarthage.library.repository.BookRepository;
+import com.enicarthage.library.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many borrowers racing for the same copies against a real MySQL: no copy is ever handed out
+ * twice, and copies, loans and returns still add up afterwards. Needs Docker; without it both tests
+ * are reported as skipped, so a green build without Docker says nothing about checkout races.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "spring.jpa.show-sql=false",
+        "library.journal.enabled=false",
+        "library.overdue.send-reminders=false"
+})
+class BorrowingConcurrencyTest {
+    
+    private static final int BORROWERS = 64;
+    
+    @Container
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+    
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> mysql.getJdbcUrl() + "?rewriteBatchedStatements=true");
+        registry.add("spring.datasource.username", mysql::getUsername);
+        registry.add("spring.datasource.password", mysql::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> BORROWERS + 8);
+    }
+    
+    @Autowired
+    private BorrowingService borrowingService;
+    
+    @Autowired
+    private BookRepository bookRepository;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void concurrentBorrowersNeverOversell() throws Exception {
+        int copies = 10;
+        Book book = createBook("oversell", copies);
+        List<User> users = createUsers("oversell", BORROWERS);
+        
+        AtomicInteger borrowed = new AtomicInteger();
+        Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+        runConcurrently(users, user -> {
+            try {
+                borrowingService.borrowBook(book.getId(), user.getId());
+                borrowed.incrementAndGet();
+            } catch (RuntimeException e) {
+                failures.computeIfAbsent(e.getMessage(), message -> new AtomicInteger()).incrementAndGet();
+            }
+        });
+        
+        assertEquals(copies, borrowed.get(), "loans granted, failures: " + failures);
+        assertEquals(0, availableCopies(book.getId()));
+        assertEquals(copies, activeLoans(book.getId()));
+        assertEquals(BORROWERS - copies, failures.getOrDefault("Book is not available for borrowing", new AtomicInteger()).get(),
+                "failures: " + failures);
+    }
+    
+    @Test
+    void borrowAndReturnUnderLoadKeepsCopiesConsistent() throws Exception {
+        int books = 16;
+        int copies = 4;
+        List<Book> titles = new ArrayList<>();
+        for (int i = 0; i < books; i++) {
+            titles.add(createBook("load-" + i, copies));
+        }
+        List<User> users = createUsers("load", BORROWERS);
+        
+        long durationNanos = TimeUnit.SECONDS.toNanos(5);
+        AtomicLong borrows = new AtomicLong();
+        AtomicLong returns = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicInteger unexpected = new AtomicInteger();
+        long start = System.nanoTime();
+        runConcurrently(users, user -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() - start < durationNanos) {
+                Book book = titles.get(random.nextInt(titles.size()));
+                Borrowing borrowing;
+                try {
+                    borrowing = borrowingService.borrowBook(book.getId(), user.getId());
+                    borrows.incrementAndGet();
+                } catch (RuntimeException e) {
+                    rejected.incrementAndGet();
+                    continue;
+                }
+                Map<String, Object> result = borrowingService.returnBook(borrowing.getId());
+                if (!Boolean.TRUE.equals(result.get("copyRestocked"))) {
+                    unexpected.incrementAndGet();
+                }
+                returns.incrementAndGet();
+            }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        System.out.printf("%d borrowers over %d books: %d borrows, %d returns, %d rejected in %.1f s "
+                        + "(%.0f circulation ops/s)%n",
+                BORROWERS, books, borrows.get(), returns.get(), rejected.get(), seconds,
+                (borrows.get() + returns.get()) / seconds);
+        assertTrue(borrows.get() > 0);
+        assertEquals(borrows.get(), returns.get());
+        assertEquals(0, unexpected.get(), "returns that found every copy already on the shelf");
+        for (Book book : titles) {
+            assertEquals(copies, availableCopies(book.getId()), "available copies of book " + book.getId());
+            assertEquals(0, activeLoans(book.getId()), "active loans of book " + book.getId());
+        }
+    }
+    
+    private void runConcurrently(List<User> users, UserTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(users.size());
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (User user : users) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(user);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private Book createBook(String name, int copies) {
+        Book book = new Book();
+        book.setTitle("Concurrency " + name);
+        book.setAuthor("Test Author");
+        book.setPublisher("Test Press");
+        book.setPublicationYear(2020);
+        book.setTotalCopies(copies);
+        book.setAvailableCopies(copies);
+        return bookRepository.save(book);
+    }
+    
+    private List<User> createUsers(String name, int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setUsername(name + "-" + i);
+            user.setEmail(name + "-" + i + "@test.local");
+            user.setPassword("password");
+            user.setFirstName("Test");
+            user.setLastName("Borrower");
+            user.setRole(User.Role.STUDENT);
+            users.add(user);
+        }
+        return userRepository.saveAll(users);
+    }
+    
+    private int availableCopies(Long bookId) {
+        return jdbcTemplate.queryForObject("SELECT available_copies FROM books WHERE id = ?", Integer.class, bookId);
+    }
+    
+    private long activeLoans(Long bookId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrowings WHERE book_id = ? AND status = 'ACTIVE'",
+                Long.class, bookId);
+    }
+    
+    private interface UserTask {
+        void run(User user);
+    }
+}